@@ -0,0 +1,67 @@
+package sm64bench;
+
+import org.openjdk.jmh.annotations.*;
+import sm64fixtures.TestRoms;
+import sm64music.RomReader;
+import sm64music.SequenceEntry;
+import sm64music.SequenceExporter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Raw and hex-dump export of every sequence, written to a channel that discards its input. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+    private RomReader rom;
+    private List<SequenceEntry> sequences;
+    private final Sink sink = new Sink();
+
+    @Setup
+    public void setup() {
+        rom = new RomReader(TestRoms.z64());
+        sequences = rom.parseSequences();
+    }
+
+    @Benchmark
+    public long exportRaw() throws IOException {
+        sink.bytes = 0;
+        for (SequenceEntry se : sequences) SequenceExporter.write(rom, se, SequenceExporter.Format.RAW, sink);
+        return sink.bytes;
+    }
+
+    @Benchmark
+    public long exportHex() throws IOException {
+        sink.bytes = 0;
+        for (SequenceEntry se : sequences) SequenceExporter.write(rom, se, SequenceExporter.Format.HEX, sink);
+        return sink.bytes;
+    }
+
+    /** Counts and drops everything written, so only formatting is measured. */
+    private static final class Sink implements WritableByteChannel {
+        long bytes;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,73 @@
+package sm64bench;
+
+import org.openjdk.jmh.annotations.*;
+import sm64fixtures.TestRoms;
+import sm64mio.MIO0Decoder;
+import sm64mio.MIO0Encoder;
+import sm64mio.MIO0Scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** MIO0 signature scan over a whole ROM, and decoding/encoding of single blocks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Mio0Benchmark {
+    private ByteBuffer heapRom;
+    private ByteBuffer directRom;
+    private int[] blocks;
+    private byte[] raw;
+    private final MIO0Decoder decoder = new MIO0Decoder();
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] image = TestRoms.z64();
+        heapRom = ByteBuffer.wrap(image).asReadOnlyBuffer();
+        directRom = ByteBuffer.allocateDirect(image.length).put(image).flip();
+        blocks = MIO0Scanner.scan(heapRom, 0, image.length);
+        if (blocks.length != TestRoms.MIO0_BLOCKS) {
+            throw new IllegalStateException("Fixture has " + blocks.length + " MIO0 blocks");
+        }
+        raw = MIO0Decoder.decodeToArray(heapRom, blocks[0]);
+    }
+
+    @Benchmark
+    public int[] scanHeap() {
+        return MIO0Scanner.scan(heapRom, 0, heapRom.limit());
+    }
+
+    /** Same scan over off-heap memory, as for a mapped ROM. */
+    @Benchmark
+    public int[] scanDirect() {
+        return MIO0Scanner.scan(directRom, 0, directRom.limit());
+    }
+
+    /** One 32 KB block into the decoder's reusable buffer. */
+    @Benchmark
+    public int decodeBlock() throws IOException {
+        return decoder.decode(directRom, blocks[0]);
+    }
+
+    /** Every block in the ROM, as the extractor does. */
+    @Benchmark
+    public int decodeAll() throws IOException {
+        int total = 0;
+        for (int off : blocks) total += decoder.decode(directRom, off);
+        return total;
+    }
+
+    @Benchmark
+    public byte[] encodeFast() {
+        return new MIO0Encoder(MIO0Encoder.Mode.FAST).encode(raw, 0, raw.length);
+    }
+
+    @Benchmark
+    public byte[] encodeBest() {
+        return new MIO0Encoder(MIO0Encoder.Mode.BEST).encode(raw, 0, raw.length);
+    }
+}
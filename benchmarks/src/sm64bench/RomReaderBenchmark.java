@@ -0,0 +1,82 @@
+package sm64bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sm64fixtures.TestRoms;
+import sm64music.RomReader;
+import sm64music.SequenceEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Opening a ROM, decoding its byte order and parsing the sequence bank, per stored format. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomReaderBenchmark {
+    @Param({"Z64", "N64", "V64"})
+    public String format;
+
+    private File file;
+    private RomReader rom;
+    private ByteBuffer stored;
+    private ByteBuffer normalized;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] z64 = TestRoms.z64();
+        byte[] image = format.equals("N64") ? TestRoms.n64(z64)
+                : format.equals("V64") ? TestRoms.v64(z64) : z64;
+        file = TestRoms.writeTemp(image, "." + format.toLowerCase());
+        rom = new RomReader(file);
+        stored = ByteBuffer.allocateDirect(image.length).put(image).flip();
+        normalized = ByteBuffer.allocateDirect(image.length);
+    }
+
+    /** Map the file and detect its byte order. */
+    @Benchmark
+    public RomReader open() throws IOException {
+        return new RomReader(file);
+    }
+
+    /** Big-endian view of the whole music region; swapped images decode it here. */
+    @Benchmark
+    public ByteBuffer normalizeMusicRegion() {
+        return rom.slice(RomReader.MUSIC_START, RomReader.MUSIC_END - RomReader.MUSIC_START);
+    }
+
+    /** Big-endian view of the whole image. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ByteBuffer normalizeWholeRom() {
+        return rom.slice(0, rom.size());
+    }
+
+    /** Whole-image conversion to .z64 order into a reused buffer, as {@code RomConverter} does per chunk. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ByteBuffer normalizeInto() {
+        normalized.clear();
+        rom.format().normalize(stored.duplicate(), normalized);
+        return normalized;
+    }
+
+    @Benchmark
+    public List<SequenceEntry> parseSequences() {
+        return rom.parseSequences();
+    }
+
+    /** Touch every byte of every sequence through the reader, as exporters do. */
+    @Benchmark
+    public void readAllSequences(Blackhole bh) {
+        for (SequenceEntry se : rom.parseSequences()) bh.consume(rom.getBytes(se.seqOffset, se.length));
+    }
+}
@@ -0,0 +1,167 @@
+package sm64metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage timers and counters for one unit of work (usually one ROM).
+ *
+ * <p>Work is measured with a {@link Span}: {@code try (Metrics.Span s = m.time(Stage.PARSE)) {
+ * ...; s.add(bytes, items); }}. Each stage accumulates calls, wall time, bytes, items (sequences,
+ * blocks, files) and an allocation estimate taken from the per-thread allocation counter of
+ * HotSpot-compatible JVMs. One {@code Metrics} may collect spans from many threads at once, but
+ * each span must be closed on the thread that opened it: the allocation estimate is the
+ * difference between two readings of that thread's counter. {@link #NONE} records nothing and
+ * is what callers that do not care about metrics pass.
+ */
+public class Metrics {
+    private static final int FIELDS = 5;
+    private static final int CALLS = 0, NANOS = 1, BYTES = 2, ITEMS = 3, ALLOCATED = 4;
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    public static final Metrics NONE = new Metrics("none", false);
+
+    private final String label;
+    private final boolean enabled;
+    private final AtomicLongArray values = new AtomicLongArray(STAGES.length * FIELDS);
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    private final Span noop = new Span(null);
+
+    public Metrics(String label) {
+        this(label, true);
+    }
+
+    private Metrics(String label, boolean enabled) {
+        this.label = label;
+        this.enabled = enabled;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+        try {
+            if (!b.isThreadAllocatedMemorySupported()) return null;
+            if (!b.isThreadAllocatedMemoryEnabled()) b.setThreadAllocatedMemoryEnabled(true);
+            return b;
+        } catch (UnsupportedOperationException | SecurityException ex) {
+            return null;
+        }
+    }
+
+    /** Bytes allocated so far by the calling thread, or -1 if unknown. */
+    private static long allocatedByThisThread() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public void addListener(MetricsListener l) {
+        if (enabled) listeners.add(l);
+    }
+
+    public void removeListener(MetricsListener l) {
+        listeners.remove(l);
+    }
+
+    /** Start timing {@code stage} on the calling thread. */
+    public Span time(Stage stage) {
+        return enabled ? new Span(stage) : noop;
+    }
+
+    public long calls(Stage s)          { return get(s, CALLS); }
+    public long nanos(Stage s)          { return get(s, NANOS); }
+    public long bytes(Stage s)          { return get(s, BYTES); }
+    public long items(Stage s)          { return get(s, ITEMS); }
+    /** Estimated bytes allocated by {@code s}; 0 if the JVM cannot measure it. */
+    public long allocatedBytes(Stage s) { return get(s, ALLOCATED); }
+
+    private long get(Stage s, int field) {
+        return values.get(s.ordinal() * FIELDS + field);
+    }
+
+    /** Add every stage of {@code other} into this one, e.g. to build batch totals. */
+    public void addAll(Metrics other) {
+        for (int i = 0; i < values.length(); i++) values.addAndGet(i, other.values.get(i));
+    }
+
+    private void record(Stage stage, long nanos, long bytes, long items, long allocated) {
+        int base = stage.ordinal() * FIELDS;
+        values.incrementAndGet(base + CALLS);
+        values.addAndGet(base + NANOS, nanos);
+        values.addAndGet(base + BYTES, bytes);
+        values.addAndGet(base + ITEMS, items);
+        if (allocated > 0) values.addAndGet(base + ALLOCATED, allocated);
+        for (MetricsListener l : listeners) l.stageCompleted(this, stage, nanos, bytes, items, allocated);
+    }
+
+    /**
+     * Append {@code {"READ":{"calls":1,"nanos":...},...}} for the stages that ran. Only names
+     * and numbers are written, so no escaping is needed.
+     */
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        boolean first = true;
+        for (Stage s : STAGES) {
+            if (calls(s) == 0) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(s.name()).append("\":{")
+                    .append("\"calls\":").append(calls(s))
+                    .append(",\"nanos\":").append(nanos(s))
+                    .append(",\"bytes\":").append(bytes(s))
+                    .append(",\"items\":").append(items(s))
+                    .append(",\"allocatedBytes\":").append(allocatedBytes(s))
+                    .append('}');
+        }
+        sb.append('}');
+    }
+
+    /** One line per stage that ran: {@code DECODE   12 calls  3.4 ms  1.2 MB  12 items}. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(label).append(':');
+        for (Stage s : STAGES) {
+            if (calls(s) == 0) continue;
+            sb.append(String.format(Locale.ROOT, "%n  %-9s %6d calls %9.1f ms %9.2f MB %6d items %9.2f MB alloc",
+                    s, calls(s), nanos(s) / 1e6, bytes(s) / 1048576.0, items(s), allocatedBytes(s) / 1048576.0));
+        }
+        return sb.toString();
+    }
+
+    /** One timed piece of work; {@link #close()} records it, on the thread that opened it. */
+    public final class Span implements AutoCloseable {
+        private final Stage stage;
+        private final long start;
+        private final long allocStart;
+        private long bytes, items;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.allocStart = stage != null ? allocatedByThisThread() : -1;
+            this.start = stage != null ? System.nanoTime() : 0;
+        }
+
+        /** Count {@code bytes} processed and {@code items} (sequences, blocks, files) handled. */
+        public Span add(long bytes, long items) {
+            this.bytes += bytes;
+            this.items += items;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (stage == null) return;
+            long nanos = System.nanoTime() - start;
+            long allocated = allocStart >= 0 ? allocatedByThisThread() - allocStart : -1;
+            record(stage, nanos, bytes, items, allocated);
+        }
+    }
+}
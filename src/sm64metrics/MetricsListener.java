@@ -0,0 +1,10 @@
+package sm64metrics;
+
+/**
+ * Notified each time a {@link Metrics.Span} ends. Called on the thread that did the work,
+ * which for MIO0 decoding is a pipeline worker, so implementations must be thread-safe.
+ */
+public interface MetricsListener {
+    /** {@code allocatedBytes} is -1 if the JVM cannot measure per-thread allocation. */
+    void stageCompleted(Metrics metrics, Stage stage, long nanos, long bytes, long items, long allocatedBytes);
+}
@@ -0,0 +1,11 @@
+package sm64metrics;
+
+/** Pipeline stages that {@link Metrics} times separately. */
+public enum Stage {
+    READ,       // open/map the ROM and check its header
+    NORMALIZE,  // byte-order decoding of .n64/.v64 images
+    PARSE,      // sequence / sound bank tables
+    SCAN,       // MIO0 signature scan
+    DECODE,     // MIO0 decompression
+    WRITE       // output files
+}
@@ -0,0 +1,191 @@
+package sm64mio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MIO0 decompressor.
+ *
+ * <p>A block is a 16-byte {@link MIO0Header} followed by three streams: layout bits (right
+ * after the header, MSB first), 16-bit back-references at {@code compOffset} and literal bytes
+ * at {@code uncompOffset}. A set layout bit copies one literal; a clear bit reads a
+ * back-reference {@code LDDD} (length {@code L+3}, distance {@code D+1}).
+ *
+ * <p>Decoding is strict: a stream that reads past the source, refers before the start of the
+ * output or overruns the declared length is rejected with an {@link IOException} rather than
+ * patched up. An instance keeps a reusable output buffer so batch callers can decode many
+ * blocks without allocating per block; instances are not thread-safe.
+ *
+ * <p>For untrusted input there is a hardened mode ({@link #MIO0Decoder(int)},
+ * {@link #decodeToArray(ByteBuffer, int, int)}): before anything is allocated, the declared
+ * length must fit the caller's cap and {@link MIO0Header#maxOutput}, the most the block's
+ * streams could produce, so a forged header cannot make the decoder reserve megabytes for a
+ * block that is a few bytes long.
+ */
+public final class MIO0Decoder {
+    private final int maxUncompressed;   // 0 = trust the header
+    private byte[] buffer = new byte[0];
+
+    public MIO0Decoder() {
+        this.maxUncompressed = 0;
+    }
+
+    /** Hardened decoder: rejects blocks declaring more than {@code maxUncompressed} bytes or than their streams hold. */
+    public MIO0Decoder(int maxUncompressed) {
+        if (maxUncompressed <= 0) throw new IllegalArgumentException("maxUncompressed must be positive");
+        this.maxUncompressed = maxUncompressed;
+    }
+
+    /** Decode the block at {@code start} into this decoder's buffer and return its length. */
+    public int decode(ByteBuffer src, int start) throws IOException {
+        MIO0Header h = maxUncompressed > 0 ? checkedHeader(src, start, maxUncompressed) : header(src, start);
+        if (buffer.length < h.uncompressedLen) buffer = new byte[h.uncompressedLen];
+        return decode(src, h, buffer, 0);
+    }
+
+    /** Output of the last {@link #decode(ByteBuffer, int)}; overwritten by the next call. */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /** Decode the block at {@code start} into a new array. */
+    public static byte[] decodeToArray(ByteBuffer src, int start) throws IOException {
+        MIO0Header h = header(src, start);
+        byte[] out = new byte[h.uncompressedLen];
+        decode(src, h, out, 0);
+        return out;
+    }
+
+    /** Hardened {@link #decodeToArray(ByteBuffer, int)}: checks the declared length before allocating. */
+    public static byte[] decodeToArray(ByteBuffer src, int start, int maxUncompressed) throws IOException {
+        MIO0Header h = checkedHeader(src, start, maxUncompressed);
+        byte[] out = new byte[h.uncompressedLen];
+        decode(src, h, out, 0);
+        return out;
+    }
+
+    /** Decode the block at {@code start} into {@code dst} from {@code dstOff}; returns bytes written. */
+    public static int decode(ByteBuffer src, int start, byte[] dst, int dstOff) throws IOException {
+        return decode(src, header(src, start), dst, dstOff);
+    }
+
+    /**
+     * Decode the block at {@code start} into a heap buffer at its position, advancing it.
+     * Back-references read the output again, so {@code dst} must be array-backed.
+     */
+    public static int decode(ByteBuffer src, int start, ByteBuffer dst) throws IOException {
+        if (!dst.hasArray()) throw new IllegalArgumentException("dst must be a heap buffer");
+        int n = decode(src, header(src, start), dst.array(), dst.arrayOffset() + dst.position());
+        dst.position(dst.position() + n);
+        return n;
+    }
+
+    /**
+     * Bytes the block at {@code start} occupies in the source: header plus the furthest end of
+     * its three streams. Walks the layout bits and back-reference lengths without producing
+     * output, so it costs a fraction of a decode.
+     */
+    public static int compressedSize(ByteBuffer src, int start) throws IOException {
+        MIO0Header h = header(src, start);
+        int limit = src.limit();
+        int layoutPos = h.offset + MIO0Header.SIZE;
+        int compPos = h.offset + h.compOffset;
+        int uncompPos = h.offset + h.uncompOffset;
+
+        int out = 0;
+        int mask = 0, maskBits = 0;
+        while (out < h.uncompressedLen) {
+            if (maskBits == 0) {
+                if (layoutPos >= limit) throw new IOException("Layout stream overflow");
+                mask = src.get(layoutPos++) & 0xFF;
+                maskBits = 8;
+            }
+            if ((mask & 0x80) != 0) {
+                uncompPos++;
+                out++;
+            } else {
+                if (compPos + 1 >= limit) throw new IOException("Comp overflow");
+                out += ((src.get(compPos) & 0xFF) >> 4) + 3;
+                compPos += 2;
+            }
+            mask <<= 1;
+            maskBits--;
+        }
+        if (uncompPos > limit) throw new IOException("Uncomp overflow");
+        return Math.max(layoutPos, Math.max(compPos, uncompPos)) - h.offset;
+    }
+
+    private static MIO0Header header(ByteBuffer src, int start) throws IOException {
+        MIO0Header h = MIO0Header.read(src, start);
+        if (h == null) throw new IOException(String.format("No valid MIO0 header at 0x%06X", start));
+        return h;
+    }
+
+    /** {@link #header}, also rejecting declared lengths over {@code max} or {@link MIO0Header#maxOutput}. */
+    static MIO0Header checkedHeader(ByteBuffer src, int start, int max) throws IOException {
+        MIO0Header h = header(src, start);
+        if (h.uncompressedLen > max) {
+            throw new IOException(String.format("MIO0 at 0x%06X declares %d bytes, limit is %d",
+                    start, h.uncompressedLen, max));
+        }
+        long room = h.maxOutput(src.limit());
+        if (h.uncompressedLen > room) {
+            throw new IOException(String.format("MIO0 at 0x%06X declares %d bytes, its streams hold at most %d",
+                    start, h.uncompressedLen, room));
+        }
+        return h;
+    }
+
+    static int decode(ByteBuffer src, MIO0Header h, byte[] dst, int dstOff) throws IOException {
+        int len = h.uncompressedLen;
+        if (dstOff < 0 || dst.length - dstOff < len) {
+            throw new IllegalArgumentException("Output buffer too small for " + len + " bytes");
+        }
+        int limit = src.limit();
+        int layoutPos = h.offset + MIO0Header.SIZE;
+        int compPos = h.offset + h.compOffset;
+        int uncompPos = h.offset + h.uncompOffset;
+
+        int out = dstOff;
+        int end = dstOff + len;
+        int mask = 0, maskBits = 0;
+        while (out < end) {
+            if (maskBits == 0) {
+                if (layoutPos >= limit) throw new IOException("Layout stream overflow");
+                mask = src.get(layoutPos++) & 0xFF;
+                maskBits = 8;
+            }
+
+            if ((mask & 0x80) != 0) {
+                if (uncompPos >= limit) throw new IOException("Uncomp overflow");
+                dst[out++] = src.get(uncompPos++);
+            } else {
+                if (compPos + 1 >= limit) throw new IOException("Comp overflow");
+                int b1 = src.get(compPos++) & 0xFF;
+                int b2 = src.get(compPos++) & 0xFF;
+
+                int dist = (((b1 & 0xF) << 8) | b2) + 1;
+                int n = (b1 >> 4) + 3;
+                if (dist > out - dstOff) {
+                    throw new IOException("Back-reference before start at output 0x" + Integer.toHexString(out - dstOff));
+                }
+                if (n > end - out) {
+                    throw new IOException("Back-reference overruns output at 0x" + Integer.toHexString(out - dstOff));
+                }
+
+                int ref = out - dist;
+                if (dist >= n) {
+                    System.arraycopy(dst, ref, dst, out, n);
+                    out += n;
+                } else {
+                    // Overlapping run: each copied byte may be the source of a later one.
+                    for (int j = 0; j < n; j++) dst[out++] = dst[ref++];
+                }
+            }
+
+            mask <<= 1;
+            maskBits--;
+        }
+        return len;
+    }
+}
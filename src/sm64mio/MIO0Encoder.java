@@ -0,0 +1,177 @@
+package sm64mio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MIO0 compressor, the inverse of {@link MIO0Decoder}.
+ *
+ * <p>Matches are found with a hash chain over the last 4 KB (the most a back-reference can
+ * reach), keyed on the next 3 bytes (the shortest match worth encoding) and capped at 18 bytes.
+ * {@link Mode#FAST} walks a few chain links and takes the first good match greedily;
+ * {@link Mode#BEST} walks the whole window and defers a match by one byte when that finds a
+ * longer one. Instances reuse their tables across calls and are not thread-safe.
+ */
+public final class MIO0Encoder {
+    public enum Mode {
+        FAST(8), BEST(WINDOW);
+
+        final int maxChain;
+
+        Mode(int maxChain) {
+            this.maxChain = maxChain;
+        }
+    }
+
+    static final int WINDOW = 4096;
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 18;
+    private static final int HASH_BITS = 15;
+
+    private final Mode mode;
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev = new int[WINDOW];
+
+    // Output streams, grown as needed and kept between calls.
+    private byte[] layout = new byte[64];
+    private byte[] comp = new byte[64];
+    private byte[] literals = new byte[64];
+    private int layoutBits, compLen, literalLen;
+    private int pendingBits;   // layout bits not yet flushed to a whole byte
+
+    private int matchDist;   // distance of the match last returned by longestMatch
+
+    public MIO0Encoder(Mode mode) {
+        this.mode = mode;
+    }
+
+    /** Compress {@code data} with a throwaway {@link Mode#BEST} encoder. */
+    public static byte[] compress(byte[] data) {
+        return new MIO0Encoder(Mode.BEST).encode(data, 0, data.length);
+    }
+
+    /** Compress {@code data[off, off+len)} into a complete MIO0 block (header included). */
+    public byte[] encode(byte[] data, int off, int len) {
+        if (len <= 0 || len > MIO0Header.MAX_UNCOMPRESSED) {
+            throw new IllegalArgumentException("MIO0 payload must be 1.." + MIO0Header.MAX_UNCOMPRESSED + " bytes");
+        }
+        Arrays.fill(head, -1);
+        layoutBits = compLen = literalLen = 0;
+
+        int pos = 0;
+        while (pos < len) {
+            int n = longestMatch(data, off, len, pos);
+            int dist = matchDist;
+            if (n >= MIN_MATCH && mode == Mode.BEST && n < MAX_MATCH && pos + 1 < len) {
+                insert(data, off, len, pos);
+                int next = longestMatch(data, off, len, pos + 1);
+                if (next > n) {
+                    literal(data[off + pos]);
+                    pos++;
+                    n = next;
+                    dist = matchDist;
+                } else {
+                    // pos is already in the chain; don't insert it twice.
+                    backref(dist, n);
+                    for (int i = 1; i < n; i++) insert(data, off, len, pos + i);
+                    pos += n;
+                    continue;
+                }
+            }
+            if (n >= MIN_MATCH) {
+                backref(dist, n);
+                for (int i = 0; i < n; i++) insert(data, off, len, pos + i);
+                pos += n;
+            } else {
+                literal(data[off + pos]);
+                insert(data, off, len, pos);
+                pos++;
+            }
+        }
+        return assemble(len);
+    }
+
+    private static int hash(byte[] d, int p) {
+        int v = ((d[p] & 0xFF) << 16) | ((d[p + 1] & 0xFF) << 8) | (d[p + 2] & 0xFF);
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void insert(byte[] d, int off, int len, int pos) {
+        if (pos + MIN_MATCH > len) return;
+        int h = hash(d, off + pos);
+        prev[pos & (WINDOW - 1)] = head[h];
+        head[h] = pos;
+    }
+
+    /** Length of the longest match for {@code pos} in the window (0 if none); sets matchDist. */
+    private int longestMatch(byte[] d, int off, int len, int pos) {
+        int limit = Math.min(MAX_MATCH, len - pos);
+        if (limit < MIN_MATCH) return 0;
+        int best = 0;
+        int cand = head[hash(d, off + pos)];
+        int chain = mode.maxChain;
+        while (cand >= 0 && pos - cand <= WINDOW && chain-- > 0) {
+            if (d[off + cand + best] == d[off + pos + best]) {
+                int n = 0;
+                while (n < limit && d[off + cand + n] == d[off + pos + n]) n++;
+                if (n > best) {
+                    best = n;
+                    matchDist = pos - cand;
+                    if (n == limit) break;
+                }
+            }
+            int next = prev[cand & (WINDOW - 1)];
+            if (next >= cand) break; // slot was recycled by a newer position
+            cand = next;
+        }
+        return best >= MIN_MATCH ? best : 0;
+    }
+
+    private void literal(byte b) {
+        bit(true);
+        if (literalLen == literals.length) literals = Arrays.copyOf(literals, literalLen * 2);
+        literals[literalLen++] = b;
+    }
+
+    private void backref(int dist, int n) {
+        bit(false);
+        if (compLen + 2 > comp.length) comp = Arrays.copyOf(comp, comp.length * 2);
+        int v = ((n - MIN_MATCH) << 12) | (dist - 1);
+        comp[compLen++] = (byte) (v >> 8);
+        comp[compLen++] = (byte) v;
+    }
+
+    private void bit(boolean set) {
+        pendingBits = (pendingBits << 1) | (set ? 1 : 0);
+        if ((++layoutBits & 7) == 0) {
+            int idx = (layoutBits >> 3) - 1;
+            if (idx == layout.length) layout = Arrays.copyOf(layout, idx * 2);
+            layout[idx] = (byte) pendingBits;
+        }
+    }
+
+    private byte[] assemble(int uncompressedLen) {
+        int tail = layoutBits & 7;
+        if (tail != 0) {
+            int idx = layoutBits >> 3;
+            if (idx == layout.length) layout = Arrays.copyOf(layout, idx + 1);
+            layout[idx] = (byte) (pendingBits << (8 - tail));
+        }
+        // The N64 decoder reads layout bits as 32-bit words, so keep each stream word-aligned.
+        int layoutBytes = align4((layoutBits + 7) >> 3);
+        int compOffset = MIO0Header.SIZE + layoutBytes;
+        int uncompOffset = compOffset + align4(compLen);
+        byte[] out = new byte[uncompOffset + literalLen];
+
+        ByteBuffer bb = ByteBuffer.wrap(out);
+        bb.putInt(MIO0Header.MAGIC).putInt(uncompressedLen).putInt(compOffset).putInt(uncompOffset);
+        System.arraycopy(layout, 0, out, MIO0Header.SIZE, (layoutBits + 7) >> 3);
+        System.arraycopy(comp, 0, out, compOffset, compLen);
+        System.arraycopy(literals, 0, out, uncompOffset, literalLen);
+        return out;
+    }
+
+    private static int align4(int n) {
+        return (n + 3) & ~3;
+    }
+}
@@ -1,25 +1,63 @@
 package sm64mio;
 
+import sm64metrics.Metrics;
+import sm64metrics.Stage;
+import sm64ui.HexViewer;
+
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class MIO0Extractor extends JFrame {
 
     private JTextArea log;
+    private final JButton openButton = new JButton("Open ROM");
+    private final JButton viewButton = new JButton("View block…");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JProgressBar progress = new JProgressBar(0, 100);
+    private ExtractWorker worker;
+
+    // Image and block offsets of the last scan, for "View block…".
+    private ByteBuffer image;
+    private int[] blocks;
+
+    /** Share of the progress bar given to the signature scan; decoding gets the rest. */
+    private static final int SCAN_SHARE = 20;
 
     public MIO0Extractor() {
         super("SM64 MIO0 → Uncompressed Extractor");
 
-        JButton openButton = new JButton("Open ROM");
         log = new JTextArea(20, 60);
         log.setEditable(false);
 
         openButton.addActionListener(e -> chooseROM());
-
-        add(openButton, BorderLayout.NORTH);
+        viewButton.addActionListener(e -> viewBlock());
+        viewButton.setEnabled(false);
+        cancelButton.addActionListener(e -> {
+            if (worker == null) return;
+            worker.cancel(false);
+            cancelButton.setEnabled(false);
+        });
+        cancelButton.setEnabled(false);
+        progress.setStringPainted(true);
+
+        JPanel bottom = new JPanel(new BorderLayout(8, 0));
+        bottom.add(progress, BorderLayout.CENTER);
+        bottom.add(cancelButton, BorderLayout.EAST);
+
+        JPanel top = new JPanel(new BorderLayout(8, 0));
+        top.add(openButton, BorderLayout.CENTER);
+        top.add(viewButton, BorderLayout.EAST);
+
+        add(top, BorderLayout.NORTH);
         add(new JScrollPane(log), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
 
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         pack();
@@ -32,121 +70,167 @@ public class MIO0Extractor extends JFrame {
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File rom = chooser.getSelectedFile();
             log.append("Opened ROM: " + rom.getName() + "\n");
-            try {
-                byte[] data = Files.readAllBytes(rom.toPath());
-                extractMIO0(data, rom.getParentFile());
-            } catch (IOException ex) {
-                log.append("Error reading ROM: " + ex.getMessage() + "\n");
-            }
+            openButton.setEnabled(false);
+            viewButton.setEnabled(false);
+            cancelButton.setEnabled(true);
+            image = null;
+            blocks = null;
+            progress.setValue(0);
+            worker = new ExtractWorker(rom);
+            worker.addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) progress.setValue((Integer) e.getNewValue());
+            });
+            worker.execute();
         }
     }
 
-    private void extractMIO0(byte[] rom, File outDir) {
-        int scanStart, scanEnd;
-        if (rom.length > 0x800000) {
-            log.append("Extended ROM detected (" + rom.length + " bytes)\n");
-            scanStart = 0x800000;
-            scanEnd = rom.length;
-            log.append("Scanning region: 0x"
-                    + Integer.toHexString(scanStart).toUpperCase()
-                    + " – 0x"
-                    + Integer.toHexString(scanEnd).toUpperCase()
-                    + "\n");
-        } else {
-            log.append("Normal ROM detected (8 MB)\n");
-            scanStart = 0x000000;
-            scanEnd = 0x800000;
-            log.append("Scanning region: 0x0 – 0x7FFFFF\n");
+    /**
+     * Pick one of the scanned blocks and show it decoded. The decode runs in the viewer's
+     * loader, off the EDT, with the same size cap as extraction.
+     */
+    private void viewBlock() {
+        if (blocks == null || blocks.length == 0) return;
+        ByteBuffer rom = image;
+        String[] choices = new String[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            MIO0Header h = MIO0Header.read(rom, blocks[i]);
+            choices[i] = String.format("0x%06X (%d bytes)", blocks[i], h != null ? h.uncompressedLen : 0);
         }
+        Object choice = JOptionPane.showInputDialog(this, "MIO0 block:", "View block",
+                JOptionPane.PLAIN_MESSAGE, null, choices, choices[0]);
+        if (choice == null) return;
+        int off = blocks[Arrays.asList(choices).indexOf(choice)];
+        HexViewer.showDialog(this, String.format("MIO0 block 0x%06X (decoded)", off), 0,
+                () -> ByteBuffer.wrap(MIO0Decoder.decodeToArray(rom, off, MIO0Header.MAX_UNCOMPRESSED)));
+    }
 
-        int count = 0;
-        for (int i = scanStart; i < scanEnd - 16; i++) {
-            if (rom[i] == 'M' && rom[i + 1] == 'I' && rom[i + 2] == 'O' && rom[i + 3] == '0') {
-                int uncompressedLen = readInt(rom, i + 4);
-                int compOffset = readInt(rom, i + 8);
-                int uncompOffset = readInt(rom, i + 12);
-
-                if (uncompressedLen <= 0 || uncompressedLen > 0x400000) continue;
-                if (i + compOffset >= rom.length) continue;
-                if (i + uncompOffset >= rom.length) continue;
-
-                String name = String.format("mio0_%06X", i);
-
-                log.append("Valid MIO0 at 0x" + Integer.toHexString(i).toUpperCase()
-                        + " (" + uncompressedLen + " bytes) → " + name + "\n");
+    /**
+     * Scans and decodes off the EDT. Log lines are published and appended in batches; Cancel
+     * stops the scan between 1 MB chunks and the pipeline between blocks.
+     */
+    private final class ExtractWorker extends SwingWorker<Integer, String> {
+        private final File rom;
+        private final Metrics metrics;
+
+        ExtractWorker(File rom) {
+            this.rom = rom;
+            this.metrics = new Metrics(rom.getName());
+        }
 
+        @Override
+        protected Integer doInBackground() throws IOException, InterruptedException {
+            try {
+                ByteBuffer image;
+                try (Metrics.Span span = metrics.time(Stage.READ);
+                     FileChannel ch = FileChannel.open(rom.toPath(), StandardOpenOption.READ)) {
+                    image = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    span.add(image.limit(), 1);
+                }
                 try {
-                    byte[] decoded = decodeMIO0(rom, i);
-                    File outFile = new File(outDir, name + ".bin");
-                    try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                        fos.write(decoded);
-                    }
-                    log.append("→ Extracted " + outFile.getName()
-                            + " (" + decoded.length + " bytes)\n");
-                    count++;
-                } catch (Exception e) {
-                    log.append("Failed to decode MIO0 at 0x" + Integer.toHexString(i).toUpperCase()
-                            + ": " + e.getMessage() + "\n");
+                    return extractMIO0(image, rom.getParentFile());
+                } finally {
+                    publish(metrics.toString());
                 }
+            } finally {
+                // done() fires as soon as Cancel is pressed; the buttons wait for the work to stop.
+                SwingUtilities.invokeLater(this::finished);
             }
         }
-        log.append("Finished. Extracted " + count + " files.\n");
-    }
-
-    private int readInt(byte[] arr, int off) {
-        return ((arr[off] & 0xFF) << 24)
-                | ((arr[off + 1] & 0xFF) << 16)
-                | ((arr[off + 2] & 0xFF) << 8)
-                | (arr[off + 3] & 0xFF);
-    }
-
-    // ✅ Fixed MIO0 decoder
-    private byte[] decodeMIO0(byte[] rom, int start) throws IOException {
-        int uncompressedLen = readInt(rom, start + 4);
-        int compOffset = readInt(rom, start + 8);
-        int uncompOffset = readInt(rom, start + 12);
 
-        byte[] output = new byte[uncompressedLen];
-        int outPos = 0;
+        /** On the EDT once the work has really stopped: the next ROM may be opened. */
+        private void finished() {
+            if (worker != this) return;
+            worker = null;
+            openButton.setEnabled(true);
+            cancelButton.setEnabled(false);
+            viewButton.setEnabled(blocks != null && blocks.length > 0);
+        }
 
-        int mask = 0, maskBits = 0;
-        int compPos = start + compOffset;
-        int uncompPos = start + uncompOffset;
+        @Override
+        protected void process(List<String> lines) {
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) sb.append(line).append('\n');
+            log.append(sb.toString());
+        }
 
-        while (outPos < uncompressedLen) {
-            if (maskBits == 0) {
-                mask = rom[compPos++] & 0xFF;
-                maskBits = 8;
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                log.append("Extraction cancelled.\n");
+                return;
             }
+            try {
+                log.append("Finished. Extracted " + get() + " files.\n");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                log.append(cause instanceof IOException ? "Error reading ROM: " + cause.getMessage() + "\n"
+                        : "Extraction failed: " + cause + "\n");
+            }
+        }
 
-            if ((mask & 0x80) != 0) {
-                // raw byte
-                if (uncompPos >= rom.length) throw new IOException("Uncomp overflow");
-                output[outPos++] = rom[uncompPos++];
+        private int extractMIO0(ByteBuffer rom, File outDir) throws InterruptedException {
+            int size = rom.limit();
+            int scanStart = MIO0Scanner.defaultStart(size);
+            int scanEnd = MIO0Scanner.defaultEnd(size);
+            if (size > MIO0Scanner.RETAIL_SIZE) {
+                publish("ROM larger than 8 MB (" + size + " bytes), extended or with appended data");
             } else {
-                if (compPos + 1 >= rom.length) throw new IOException("Comp overflow");
-                int b1 = rom[compPos++] & 0xFF;
-                int b2 = rom[compPos++] & 0xFF;
-
-                int dist = ((b1 & 0xF) << 8) | b2;
-                int len = (b1 >> 4) + 3;
+                publish("Normal ROM detected (8 MB)");
+            }
+            publish("Scanning region: 0x"
+                    + Integer.toHexString(scanStart).toUpperCase()
+                    + " – 0x"
+                    + Integer.toHexString(scanEnd - 1).toUpperCase());
+
+            int[] offsets;
+            try (Metrics.Span span = metrics.time(Stage.SCAN)) {
+                offsets = MIO0Scanner.scan(rom, scanStart, scanEnd, new MIO0Scanner.Progress() {
+                    @Override
+                    public void scanned(int done, int total) {
+                        setProgress((int) ((long) SCAN_SHARE * done / Math.max(1, total)));
+                    }
 
-                int ref = outPos - dist - 1;
-                if (ref < 0) ref = 0; // allow backref at start
+                    @Override
+                    public boolean isCancelled() {
+                        return ExtractWorker.this.isCancelled();
+                    }
+                });
+                span.add(Math.max(0, scanEnd - scanStart), offsets.length);
+            }
+            if (isCancelled()) return 0;
+            int[] found = offsets;
+            SwingUtilities.invokeLater(() -> {
+                // A cancelled or superseded scan must not replace the blocks of the current one.
+                if (worker != this || isCancelled()) return;
+                image = rom;
+                blocks = found;
+            });
+            publish("Found " + offsets.length + " MIO0 blocks, decoding…");
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            return new MIO0Pipeline(parallelism, metrics).extract(rom, offsets, outDir, new MIO0Pipeline.Listener() {
+                @Override
+                public void blockWritten(MIO0Header h, File out, int done, int total) {
+                    publish("→ Extracted " + out.getName() + " (" + h.uncompressedLen + " bytes) ["
+                            + done + "/" + total + "]");
+                    setProgress(SCAN_SHARE + (100 - SCAN_SHARE) * done / total);
+                }
 
-                for (int j = 0; j < len; j++) {
-                    if (outPos >= uncompressedLen) break;
-                    output[outPos] = output[ref];
-                    outPos++;
-                    ref++;
+                @Override
+                public void blockFailed(MIO0Header h, Exception e, int done, int total) {
+                    String at = h != null ? Integer.toHexString(h.offset).toUpperCase() : "?";
+                    publish("Failed to decode MIO0 at 0x" + at + ": " + e.getMessage());
+                    setProgress(SCAN_SHARE + (100 - SCAN_SHARE) * done / total);
                 }
-            }
 
-            mask <<= 1;
-            maskBits--;
+                @Override
+                public boolean isCancelled() {
+                    return ExtractWorker.this.isCancelled();
+                }
+            });
         }
-
-        return output;
     }
 
     public static void main(String[] args) {
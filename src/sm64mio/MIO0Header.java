@@ -0,0 +1,73 @@
+package sm64mio;
+
+import java.nio.ByteBuffer;
+
+/** The 16-byte MIO0 block header: magic, uncompressed length, and the two stream offsets. */
+public final class MIO0Header {
+    public static final int SIZE = 16;
+    public static final int MAGIC = 0x4D494F30; // "MIO0"
+    /** Largest block we accept; nothing in SM64 decompresses to more than a few hundred KB. */
+    public static final int MAX_UNCOMPRESSED = 0x400000;
+
+    public final int offset;           // ROM offset of the header
+    public final int uncompressedLen;
+    public final int compOffset;       // back-reference stream, relative to header
+    public final int uncompOffset;     // literal byte stream, relative to header
+
+    private MIO0Header(int offset, int uncompressedLen, int compOffset, int uncompOffset) {
+        this.offset = offset;
+        this.uncompressedLen = uncompressedLen;
+        this.compOffset = compOffset;
+        this.uncompOffset = uncompOffset;
+    }
+
+    /** Parse and sanity-check the header at {@code off}; returns null if it is not plausible. */
+    public static MIO0Header read(ByteBuffer rom, int off) {
+        return read(rom, off, rom.limit());
+    }
+
+    /**
+     * {@link #read(ByteBuffer, int)} for a window that may end before the image does: the stream
+     * offsets are checked against {@code limit}, the end of the image in {@code rom}'s
+     * coordinates. {@link #offset} is then relative to the window too.
+     */
+    public static MIO0Header read(ByteBuffer rom, int off, int limit) {
+        if (off < 0 || off > limit - SIZE || off > rom.limit() - SIZE) return null;
+        if (rom.getInt(off) != MAGIC) return null;
+
+        int uncompressedLen = rom.getInt(off + 4);
+        int compOffset = rom.getInt(off + 8);
+        int uncompOffset = rom.getInt(off + 12);
+
+        if (uncompressedLen <= 0 || uncompressedLen > MAX_UNCOMPRESSED) return null;
+        if (compOffset < SIZE || compOffset >= limit - off) return null;
+        if (uncompOffset < SIZE || uncompOffset >= limit - off) return null;
+        return new MIO0Header(off, uncompressedLen, compOffset, uncompOffset);
+    }
+
+    /**
+     * Most bytes the block's streams could decode to in an image of {@code limit} bytes. The
+     * layout bits run from the header to the first of the other two streams, and each bit
+     * yields at most 18 bytes (a maximal back-reference); each bit also consumes a literal or a
+     * 2-byte back-reference, so what is left of those streams bounds the output as well.
+     */
+    public long maxOutput(int limit) {
+        long layoutBits = (long) (Math.min(compOffset, uncompOffset) - SIZE) * 8;
+        long fromSource = (long) (limit - offset - uncompOffset) + (long) (limit - offset - compOffset) / 2 * 18;
+        return Math.min(layoutBits * 18, fromSource);
+    }
+
+    /**
+     * Bytes from the header that the streams cannot reach past: each of the at most
+     * {@link #uncompressedLen} layout bits takes one literal or one 2-byte back-reference.
+     */
+    public long extent() {
+        return Math.max(compOffset, uncompOffset) + 2L * uncompressedLen;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MIO0 @0x%06X (len=%d, comp=+0x%X, uncomp=+0x%X)",
+                offset, uncompressedLen, compOffset, uncompOffset);
+    }
+}
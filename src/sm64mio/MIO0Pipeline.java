@@ -0,0 +1,140 @@
+package sm64mio;
+
+import sm64metrics.Metrics;
+import sm64metrics.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes MIO0 blocks concurrently and writes them as {@code mio0_XXXXXX.bin}.
+ *
+ * <p>Blocks are independent, so each one is decoded on a worker. Finished blocks go through a
+ * bounded queue to the calling thread, which does all file writes; a slow disk therefore
+ * throttles the decoders instead of piling decoded blocks up on the heap. Output buffers come
+ * from a fixed pool of {@link MIO0Decoder}s that the writer hands back after each write, so a
+ * run allocates a handful of buffers rather than one per block. The decoders run in hardened
+ * mode, so a forged header cannot grow a pooled buffer past what its block could hold.
+ */
+public final class MIO0Pipeline {
+
+    /** Progress callbacks, invoked on the thread that called {@link #extract}. */
+    public interface Listener {
+        default void blockWritten(MIO0Header header, File out, int done, int total) { }
+        default void blockFailed(MIO0Header header, Exception error, int done, int total) { }
+        /** Polled between blocks; returning true stops the run early. */
+        default boolean isCancelled() { return false; }
+    }
+
+    private static final class Decoded {
+        final MIO0Header header;
+        final MIO0Decoder decoder;   // holds the output; null if nothing was decoded
+        final int length;
+        final Exception error;
+
+        Decoded(MIO0Header header, MIO0Decoder decoder, int length, Exception error) {
+            this.header = header;
+            this.decoder = decoder;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    private final int parallelism;
+    private final int queueCapacity;
+    private final Metrics metrics;
+
+    public MIO0Pipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MIO0Pipeline(int parallelism) {
+        this(parallelism, Metrics.NONE);
+    }
+
+    /** Record {@link Stage#DECODE} (per worker) and {@link Stage#WRITE} (per file) in {@code metrics}. */
+    public MIO0Pipeline(int parallelism, Metrics metrics) {
+        this.parallelism = Math.max(1, parallelism);
+        this.queueCapacity = this.parallelism * 2;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decode the blocks at {@code offsets} of a big-endian image and write them to {@code outDir}.
+     *
+     * @return number of files written
+     */
+    public int extract(ByteBuffer rom, int[] offsets, File outDir, Listener listener) throws InterruptedException {
+        ByteBuffer buf = rom.asReadOnlyBuffer();
+        BlockingQueue<Decoded> queue = new ArrayBlockingQueue<>(queueCapacity);
+        // Every decoder is either decoding, queued or being written, so this many never runs dry.
+        BlockingQueue<MIO0Decoder> decoders = new ArrayBlockingQueue<>(parallelism + queueCapacity + 1);
+        for (int i = parallelism + queueCapacity + 1; i > 0; i--) decoders.add(new MIO0Decoder(MIO0Header.MAX_UNCOMPRESSED));
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        int written = 0;
+        try {
+            for (int off : offsets) {
+                pool.execute(() -> {
+                    try {
+                        queue.put(decodeOne(buf, off, decoders, listener, metrics));
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            for (int done = 1; done <= offsets.length; done++) {
+                if (listener.isCancelled()) break;
+                Decoded d = queue.take();
+                if (d.decoder == null) {
+                    if (d.error != null) listener.blockFailed(d.header, d.error, done, offsets.length);
+                    continue;
+                }
+                File out = new File(outDir, String.format("mio0_%06X.bin", d.header.offset));
+                try (Metrics.Span span = metrics.time(Stage.WRITE);
+                     FileChannel ch = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer data = ByteBuffer.wrap(d.decoder.buffer(), 0, d.length);
+                    while (data.hasRemaining()) ch.write(data);
+                    span.add(d.length, 1);
+                    written++;
+                    listener.blockWritten(d.header, out, done, offsets.length);
+                } catch (IOException ex) {
+                    listener.blockFailed(d.header, ex, done, offsets.length);
+                } finally {
+                    decoders.add(d.decoder);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    private static Decoded decodeOne(ByteBuffer buf, int off, BlockingQueue<MIO0Decoder> decoders,
+                                     Listener listener, Metrics metrics) throws InterruptedException {
+        MIO0Header h = MIO0Header.read(buf, off);
+        if (listener.isCancelled()) return new Decoded(h, null, 0, null);
+        if (h == null) {
+            return new Decoded(null, null, 0,
+                    new IOException(String.format("No MIO0 header at 0x%06X", off)));
+        }
+        MIO0Decoder decoder = decoders.take();
+        try (Metrics.Span span = metrics.time(Stage.DECODE)) {
+            int length = decoder.decode(buf, off);
+            span.add(length, 1);
+            return new Decoded(h, decoder, length, null);
+        } catch (IOException | RuntimeException ex) {
+            decoders.add(decoder);
+            return new Decoded(h, null, 0, ex);
+        }
+    }
+}
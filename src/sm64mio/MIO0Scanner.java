@@ -0,0 +1,126 @@
+package sm64mio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds MIO0 block headers in a big-endian ROM image.
+ *
+ * <p>{@link #findSignatures} only looks for the "MIO0" magic, 8 bytes per step: each word is
+ * XOR-ed against a broadcast 'M' and the zero bytes of the result are located with a SWAR
+ * test, so only the (rare) 'M' positions are ever compared in full. {@link #scan} then keeps
+ * the candidates whose header passes {@link MIO0Header#read}.
+ */
+public final class MIO0Scanner {
+    /** Size of a retail (non-extended) SM64 ROM. */
+    public static final int RETAIL_SIZE = 0x800000;
+
+    /** Scan granularity for progress reports and cancellation checks. */
+    private static final int CHUNK = 1 << 20;
+
+    private static final long BROADCAST_M = 0x4D4D4D4D4D4D4D4DL;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    /** Progress of a long scan; {@link #isCancelled} is polled between chunks. */
+    public interface Progress {
+        void scanned(int done, int total);
+        default boolean isCancelled() { return false; }
+    }
+
+    private MIO0Scanner() { }
+
+    /**
+     * Start of the default scan: the whole image. A ROM past {@link #RETAIL_SIZE} may be an
+     * extended ROM with relocated MIO0 data, or a retail one that only grew because sequences
+     * were appended; both keep blocks below 8 MB, and the scan is cheap enough to cover all.
+     */
+    public static int defaultStart(int romSize) {
+        return 0;
+    }
+
+    public static int defaultEnd(int romSize) {
+        return romSize;
+    }
+
+    /** Offsets of valid MIO0 headers in {@code [start, end)}, ascending. */
+    public static int[] scan(ByteBuffer rom, int start, int end) {
+        int[] hits = findSignatures(rom, start, end);
+        int n = 0;
+        for (int off : hits) {
+            if (MIO0Header.read(rom, off) != null) hits[n++] = off;
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    /**
+     * {@link #scan(ByteBuffer, int, int)} over a window of a larger image, for callers that read
+     * the image a window at a time. {@code window} holds the image from {@code base} on; headers
+     * starting in its first {@code len} bytes are found, and checked against the image size as a
+     * scan of the whole image would. The window should run {@link MIO0Header#SIZE} bytes past
+     * {@code len} where the image does. Returns image offsets, ascending.
+     */
+    public static int[] scanWindow(ByteBuffer window, int base, int len, int imageSize) {
+        int[] hits = findSignatures(window, 0, Math.min(window.limit(), len + 3));
+        int n = 0;
+        for (int off : hits) {
+            if (MIO0Header.read(window, off, imageSize - base) != null) hits[n++] = base + off;
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    /**
+     * {@link #scan(ByteBuffer, int, int)} in 1 MB chunks, reporting bytes scanned after each.
+     * If {@code progress} is cancelled the blocks found so far are returned.
+     */
+    public static int[] scan(ByteBuffer rom, int start, int end, Progress progress) {
+        int lo = Math.max(0, start);
+        int hi = Math.min(end, rom.limit());
+        int total = Math.max(0, hi - lo);
+        int[] found = new int[0];
+        for (long c = lo; c < hi && !progress.isCancelled(); c += CHUNK) {
+            // Let a magic starting in this chunk run up to 3 bytes into the next one.
+            int[] hits = scan(rom, (int) c, (int) Math.min(hi, c + CHUNK + 3));
+            if (hits.length > 0) {
+                int n = found.length;
+                found = Arrays.copyOf(found, n + hits.length);
+                System.arraycopy(hits, 0, found, n, hits.length);
+            }
+            progress.scanned((int) Math.min(total, c + CHUNK - lo), total);
+        }
+        return found;
+    }
+
+    /** Offsets in {@code [start, end)} where the 4-byte "MIO0" magic starts, ascending. */
+    public static int[] findSignatures(ByteBuffer rom, int start, int end) {
+        int lo = Math.max(0, start);
+        int hi = Math.min(end, rom.limit());   // the magic must lie fully inside [lo, hi)
+        int[] hits = new int[16];
+        int n = 0;
+
+        int i = lo;
+        for (; i + 8 <= hi; i += 8) {
+            long m = zeroBytes(rom.getLong(i) ^ BROADCAST_M);
+            while (m != 0) {
+                int lz = Long.numberOfLeadingZeros(m);
+                m &= ~(Long.MIN_VALUE >>> lz);
+                int j = i + (lz >>> 3);
+                if (j + 4 <= hi && rom.getInt(j) == MIO0Header.MAGIC) {
+                    if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                    hits[n++] = j;
+                }
+            }
+        }
+        for (; i + 4 <= hi; i++) {
+            if (rom.get(i) == 'M' && rom.getInt(i) == MIO0Header.MAGIC) {
+                if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+                hits[n++] = i;
+            }
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    /** High bit set in every byte of {@code x} that is zero (exact, no carry false positives). */
+    private static long zeroBytes(long x) {
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+}
@@ -0,0 +1,42 @@
+package sm64music;
+
+import java.util.Arrays;
+
+/**
+ * The sound banks a sequence loads, from the bank-set table that follows the sequence bank.
+ *
+ * <p>The table starts with one {@code u16} offset per sequence; each points at a {@code u8}
+ * count followed by that many bank ids. The game plays the sequence with the last bank listed.
+ */
+public class BankSetEntry {
+    public final int seqId;
+    public final int tableOffset;  // location of the u16 offset
+    public final int offset;       // ROM offset of the count byte
+    private final int[] banks;
+
+    public BankSetEntry(int seqId, int tableOffset, int offset, int[] banks) {
+        this.seqId = seqId;
+        this.tableOffset = tableOffset;
+        this.offset = offset;
+        this.banks = banks.clone();
+    }
+
+    public int[] banks() {
+        return banks.clone();
+    }
+
+    /** The bank the sequence plays with, or -1 if none are listed. */
+    public int primaryBank() {
+        return banks.length > 0 ? banks[banks.length - 1] : -1;
+    }
+
+    /** Bytes used by this set: the count byte plus one byte per bank. */
+    public int length() {
+        return 1 + banks.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%02X] @0x%06X banks=%s", seqId, offset, Arrays.toString(banks));
+    }
+}
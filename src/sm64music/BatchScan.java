@@ -0,0 +1,401 @@
+package sm64music;
+
+import sm64metrics.Metrics;
+import sm64metrics.MetricsListener;
+import sm64metrics.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless range extraction over many ROMs, one ROM per task.
+ *
+ * <pre>
+ * java -cp ... sm64music.BatchScan [-j N] [-o DIR] [--no-mio0] [--cache DIR] [--metrics FILE] [--index FILE]
+ *     [--format range|csv|json|vinesauce] [--coalesce] &lt;rom-or-dir&gt;...
+ * </pre>
+ *
+ * Each ROM gets a {@code <name>.ranges.txt} with its sequence {@code RANGE:} lines followed by
+ * the MIO0 header offsets, written to {@code DIR} or next to the ROM. Other
+ * {@link RangeExporter.Format}s write {@code <name>.ranges.<ext>} with the sequences and MIO0
+ * blocks as one list of ranges in offset order; {@code --coalesce} merges touching ones. With {@code --cache},
+ * unchanged ROMs are answered from a {@link RomIndexCache} instead of being re-parsed. Every
+ * ROM is measured per {@link Stage}; {@code --metrics} writes those numbers as JSON. With
+ * {@code --index}, every ROM's sequence, sound bank and MIO0 ranges also go into one
+ * {@link RangeIndex} for the whole batch.
+ */
+public class BatchScan {
+    private final int parallelism;
+    private final File outDir;      // null = next to each ROM
+    private final boolean scanMio0;
+    private final RomIndexCache cache; // null = always parse
+    private final MetricsListener listener; // null = none
+    private final RangeIndex.Builder index;  // null = no corpus index
+    private RangeExporter.Format format = RangeExporter.Format.RANGE;
+    private boolean coalesce;
+
+    public BatchScan(int parallelism, File outDir, boolean scanMio0, RomIndexCache cache) {
+        this(parallelism, outDir, scanMio0, cache, null);
+    }
+
+    /** {@code listener} is attached to every ROM's {@link Metrics} and called from worker threads. */
+    public BatchScan(int parallelism, File outDir, boolean scanMio0, RomIndexCache cache, MetricsListener listener) {
+        this(parallelism, outDir, scanMio0, cache, listener, null);
+    }
+
+    /** Also add every scanned ROM's ranges to {@code index}. */
+    public BatchScan(int parallelism, File outDir, boolean scanMio0, RomIndexCache cache, MetricsListener listener,
+                     RangeIndex.Builder index) {
+        this.parallelism = Math.max(1, parallelism);
+        this.outDir = outDir;
+        this.scanMio0 = scanMio0;
+        this.cache = cache;
+        this.listener = listener;
+        this.index = index;
+    }
+
+    /** Format of the per-ROM range files; with {@code coalesce}, touching ranges are merged. */
+    public BatchScan exportAs(RangeExporter.Format format, boolean coalesce) {
+        this.format = format;
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    /** Outcome for one ROM; {@code error} is null on success. */
+    public static class Result {
+        public final File rom;
+        public final int sequences;
+        public final int mio0Blocks;
+        public final String error;
+        public final Metrics metrics;
+
+        Result(File rom, int sequences, int mio0Blocks, String error, Metrics metrics) {
+            this.rom = rom;
+            this.sequences = sequences;
+            this.mio0Blocks = mio0Blocks;
+            this.error = error;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) return rom.getName() + ": " + error;
+            return rom.getName() + ": " + sequences + " sequences, " + mio0Blocks + " MIO0 blocks";
+        }
+    }
+
+    /** Scan all ROMs; results come back in input order. */
+    public List<Result> run(List<File> roms) throws InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        ExecutorService pool = newExecutor(parallelism);
+        List<Future<Result>> futures = new ArrayList<>(roms.size());
+        try {
+            for (File rom : roms) {
+                futures.add(pool.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return scan(rom);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(roms.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException ex) {
+                    results.add(new Result(roms.get(i), 0, 0, String.valueOf(ex.getCause()), Metrics.NONE));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    Result scan(File romFile) {
+        Metrics metrics = new Metrics(romFile.getPath());
+        if (listener != null) metrics.addListener(listener);
+        try {
+            RomReader rom;
+            try (Metrics.Span span = metrics.time(Stage.READ)) {
+                rom = new RomReader(romFile);
+                span.add(rom.size(), 1);
+                if (!rom.looksLikeSm64()) return new Result(romFile, 0, 0, "not SM64 (title not found)", metrics);
+            }
+
+            List<SequenceEntry> entries;
+            int[] mio0 = new int[0];
+            if (cache != null) {
+                RomIndexCache.Entry e = cache.index(rom, scanMio0, metrics);
+                entries = e.sequences;
+                if (scanMio0) mio0 = e.mio0Offsets;
+            } else {
+                entries = RomIndexCache.parseSequences(rom, metrics);
+                if (scanMio0) mio0 = RomIndexCache.scanMio0(rom, metrics);
+            }
+
+            if (index != null) {
+                try (Metrics.Span span = metrics.time(Stage.PARSE)) {
+                    List<SoundBankEntry> banks = new ArrayList<>(rom.parseSoundBanks(SoundBankEntry.Kind.CTL));
+                    banks.addAll(rom.parseSoundBanks(SoundBankEntry.Kind.TBL));
+                    index.addRom(romFile.getPath(), rom, entries, banks, mio0);
+                    span.add(0, banks.size());
+                }
+            }
+
+            File dir = outDir != null ? outDir : romFile.getAbsoluteFile().getParentFile();
+            Path out = new File(dir, romFile.getName() + ".ranges." + format.extension).toPath();
+            try (Metrics.Span span = metrics.time(Stage.WRITE)) {
+                try (RangeExporter w = RangeExporter.open(out, format, coalesce)) {
+                    if (format == RangeExporter.Format.RANGE) {
+                        for (SequenceEntry se : entries) w.add(se.seqOffset, se.seqOffset + se.length);
+                        for (int off : mio0) w.line("MIO0", off);
+                    } else {
+                        writeMerged(w, rom, entries, mio0);
+                    }
+                    w.finish();
+                }
+                span.add(Files.size(out), 1);
+            }
+            return new Result(romFile, entries.size(), mio0.length, null, metrics);
+        } catch (IOException | RuntimeException ex) {
+            return new Result(romFile, 0, 0, ex.toString(), metrics);
+        }
+    }
+
+    /**
+     * Sequences and MIO0 blocks as one offset-ordered stream: both lists are sorted already
+     * (sequences nearly always), so this is a linear merge. MIO0 blocks whose stream does not
+     * parse are left out.
+     */
+    private static void writeMerged(RangeExporter w, RomReader rom, List<SequenceEntry> entries, int[] mio0)
+            throws IOException {
+        List<SequenceEntry> seqs = entries;
+        for (int i = 1; i < seqs.size(); i++) {
+            if (seqs.get(i).seqOffset < seqs.get(i - 1).seqOffset) {
+                seqs = new ArrayList<>(entries);
+                seqs.sort(Comparator.comparingInt(se -> se.seqOffset));
+                break;
+            }
+        }
+        int s = 0, m = 0;
+        while (s < seqs.size() || m < mio0.length) {
+            if (m == mio0.length || (s < seqs.size() && seqs.get(s).seqOffset <= mio0[m])) {
+                SequenceEntry se = seqs.get(s++);
+                w.add(se.seqOffset, se.seqOffset + se.length);
+            } else {
+                int off = mio0[m++];
+                try {
+                    w.add(off, off + RomIndexCache.mio0Size(rom, off));
+                } catch (IOException ex) {
+                    // not a complete stream; nothing to export
+                }
+            }
+        }
+    }
+
+    /** JSON summary: per-ROM stage metrics plus batch totals. */
+    static String metricsJson(List<Result> results, int parallelism, long wallNanos) {
+        Metrics totals = new Metrics("total");
+        StringBuilder sb = new StringBuilder(256 + results.size() * 512);
+        sb.append("{\"parallelism\":").append(parallelism)
+                .append(",\"wallNanos\":").append(wallNanos)
+                .append(",\"roms\":[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            totals.addAll(r.metrics);
+            if (i > 0) sb.append(',');
+            sb.append("\n{\"rom\":");
+            appendJsonString(sb, r.rom.getPath());
+            sb.append(",\"sequences\":").append(r.sequences)
+                    .append(",\"mio0Blocks\":").append(r.mio0Blocks)
+                    .append(",\"error\":");
+            if (r.error != null) appendJsonString(sb, r.error);
+            else sb.append("null");
+            sb.append(",\"stages\":");
+            r.metrics.appendJson(sb);
+            sb.append('}');
+        }
+        sb.append("],\n\"totals\":");
+        totals.appendJson(sb);
+        return sb.append("}\n").toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /** Virtual threads on JDK 21+, otherwise a fixed pool; {@link #run} bounds both with permits. */
+    static ExecutorService newExecutor(int parallelism) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /** Expand directories (recursively) into their .z64/.n64/.v64 files. */
+    static List<File> collectRoms(List<String> args) throws IOException {
+        List<File> roms = new ArrayList<>();
+        for (String a : args) {
+            Path p = Paths.get(a);
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> walk = Files.walk(p)) {
+                    roms.addAll(walk.filter(Files::isRegularFile)
+                            .filter(BatchScan::isRomName)
+                            .sorted()
+                            .map(Path::toFile)
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                roms.add(p.toFile());
+            }
+        }
+        return roms;
+    }
+
+    private static boolean isRomName(Path p) {
+        String n = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        return n.endsWith(".z64") || n.endsWith(".n64") || n.endsWith(".v64");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BatchScan [-j N] [-o DIR] [--no-mio0] [--cache DIR] [--metrics FILE] [--index FILE]\n"
+                + "                 [--format range|csv|json|vinesauce] [--coalesce] [-v] <rom-or-dir>...");
+        System.exit(2);
+    }
+
+    /** Print the parser diagnostics to stderr, one line per message as they used to be. */
+    private static void verbose() {
+        ConsoleHandler h = new ConsoleHandler();
+        h.setLevel(Level.FINE);
+        h.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord r) {
+                return formatMessage(r) + System.lineSeparator();
+            }
+        });
+        RomReader.LOG.setLevel(Level.FINE);
+        RomReader.LOG.setUseParentHandlers(false);
+        RomReader.LOG.addHandler(h);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File outDir = null;
+        boolean scanMio0 = true;
+        RomIndexCache cache = null;
+        File metricsFile = null;
+        File indexFile = null;
+        RangeExporter.Format format = RangeExporter.Format.RANGE;
+        boolean coalesce = false;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j":
+                    if (++i >= args.length) usage();
+                    try {
+                        parallelism = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException ex) {
+                        usage();
+                    }
+                    if (parallelism < 1) usage();
+                    break;
+                case "-o":
+                    if (++i >= args.length) usage();
+                    outDir = new File(args[i]);
+                    break;
+                case "--no-mio0":
+                    scanMio0 = false;
+                    break;
+                case "--cache":
+                    if (++i >= args.length) usage();
+                    cache = new RomIndexCache(new File(args[i]), 64L << 20);
+                    break;
+                case "--metrics":
+                    if (++i >= args.length) usage();
+                    metricsFile = new File(args[i]);
+                    break;
+                case "--format":
+                    if (++i >= args.length) usage();
+                    try {
+                        format = RangeExporter.Format.valueOf(args[i].toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException ex) {
+                        usage();
+                    }
+                    break;
+                case "--coalesce":
+                    coalesce = true;
+                    break;
+                case "-v":
+                case "--verbose":
+                    verbose();
+                    break;
+                case "--index":
+                    if (++i >= args.length) usage();
+                    indexFile = new File(args[i]);
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) usage();
+        if (outDir != null) Files.createDirectories(outDir.toPath());
+
+        List<File> roms = collectRoms(inputs);
+        long t0 = System.nanoTime();
+        RangeIndex.Builder index = indexFile != null ? new RangeIndex.Builder() : null;
+        List<Result> results = new BatchScan(parallelism, outDir, scanMio0, cache, null, index)
+                .exportAs(format, coalesce)
+                .run(roms);
+        int failed = 0;
+        for (Result r : results) {
+            System.out.println(r);
+            if (r.error != null) failed++;
+        }
+        long wall = System.nanoTime() - t0;
+        System.out.printf("[BATCH] %d ROMs (%d failed) in %d ms, parallelism %d%n",
+                results.size(), failed, wall / 1_000_000, parallelism);
+        if (metricsFile != null) {
+            Files.write(metricsFile.toPath(), metricsJson(results, parallelism, wall).getBytes(StandardCharsets.UTF_8));
+            System.out.println("[BATCH] Metrics written to " + metricsFile);
+        }
+        if (index != null) {
+            RangeIndex built = index.build();
+            built.write(indexFile);
+            System.out.printf("[BATCH] Index of %d ranges from %d ROMs written to %s%n",
+                    built.size(), built.romCount(), indexFile);
+        }
+        if (failed > 0) System.exit(1);
+    }
+}
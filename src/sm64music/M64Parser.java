@@ -0,0 +1,306 @@
+package sm64music;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * Walks the sequence, channel and layer scripts of an M64 sequence (SM64 US command set) and
+ * reports what it finds to an {@link M64Visitor} without building a tree.
+ *
+ * <p>The walk starts at offset 0 of the sequence script and follows {@code startchannel} into
+ * channel scripts and {@code setlayer} into layer scripts. Jumps and calls are followed (calls up
+ * to the hardware's 4-deep stack); both sides of conditional branches are walked. Each
+ * instruction is decoded at most once per script kind, which both terminates loops and keeps
+ * the cost linear in the sequence size. Unknown opcodes and truncated data end the current
+ * script with {@link M64Visitor#error} rather than throwing.
+ */
+public final class M64Parser {
+    private static final int MAX_CALL_DEPTH = 4;
+    private static final M64Visitor.Script[] SCRIPTS = M64Visitor.Script.values();
+
+    /** Thrown internally when an instruction runs past the end of the sequence. */
+    private static final class Truncated extends RuntimeException {
+        Truncated() {
+            super("Instruction runs past end of sequence", null, false, false);
+        }
+    }
+
+    private static final Truncated TRUNCATED = new Truncated();
+
+    private final ByteBuffer seq;
+    private final int size;
+    private final M64Visitor v;
+    private final BitSet[] seen = { new BitSet(), new BitSet(), new BitSet() };
+    private final ArrayDeque<int[]> pending = new ArrayDeque<>();   // {script, pc, channel, layer, largeNotes}
+    private final int[] stack = new int[MAX_CALL_DEPTH];
+
+    // State of the script currently being walked.
+    private int channel, layer;
+    private boolean largeNotes;
+
+    private M64Parser(ByteBuffer seq, M64Visitor v) {
+        this.seq = seq;
+        this.size = seq.limit();
+        this.v = v;
+    }
+
+    /** Parse a whole sequence; {@code seq} holds the sequence from its position to its limit. */
+    public static void parse(ByteBuffer seq, M64Visitor v) {
+        M64Parser p = new M64Parser(seq.slice(), v);
+        p.pending.add(new int[] { M64Visitor.Script.SEQUENCE.ordinal(), 0, -1, -1, 0 });
+        while (!p.pending.isEmpty()) p.walk(p.pending.poll());
+    }
+
+    public static void parse(RomReader rom, SequenceEntry se, M64Visitor v) {
+        parse(rom.slice(se.seqOffset, se.length), v);
+    }
+
+    private void walk(int[] task) {
+        M64Visitor.Script script = SCRIPTS[task[0]];
+        BitSet done = seen[task[0]];
+        int pc = task[1];
+        channel = task[2];
+        layer = task[3];
+        largeNotes = task[4] != 0;
+        int sp = 0;
+
+        while (true) {
+            if (pc < 0 || pc >= size) {
+                v.error(script, pc, "Target outside sequence");
+                return;
+            }
+            if (done.get(pc)) {
+                // Already decoded: a loop, or code shared with another path. Resume the caller.
+                if (sp == 0) return;
+                pc = stack[--sp];
+                continue;
+            }
+            int op = seq.get(pc) & 0xFF;
+            int len;
+            try {
+                len = decode(script, pc, op);
+            } catch (Truncated t) {
+                v.error(script, pc, t.getMessage());
+                return;
+            }
+            if (len < 0) {
+                v.error(script, pc, String.format("Unknown opcode 0x%02X", op));
+                return;
+            }
+            done.set(pc);
+            v.command(script, channel, layer, pc, op, len);
+
+            switch (op) {
+                case 0xFF:
+                    if (sp == 0) return;
+                    pc = stack[--sp];
+                    continue;
+                case 0xFC:
+                    if (sp == MAX_CALL_DEPTH) {
+                        v.error(script, pc, "Call stack overflow");
+                        return;
+                    }
+                    stack[sp++] = pc + 3;
+                    pc = u16(pc + 1);
+                    continue;
+                case 0xFB:
+                    pc = u16(pc + 1);
+                    continue;
+                case 0xFA: case 0xF9: case 0xF5:
+                    if (script != M64Visitor.Script.LAYER) {
+                        pending.add(new int[] { task[0], u16(pc + 1), channel, layer, largeNotes ? 1 : 0 });
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pc += len;
+        }
+    }
+
+    /** Length of the instruction at {@code pc} (emitting its events), or -1 if unknown. */
+    private int decode(M64Visitor.Script script, int pc, int op) {
+        switch (op) {
+            case 0xFF:
+                return 1;
+            case 0xFC: case 0xFB:
+                u16(pc + 1);
+                return 3;
+            default:
+                break;
+        }
+        switch (script) {
+            case SEQUENCE: return sequenceCommand(pc, op);
+            case CHANNEL:  return channelCommand(pc, op);
+            default:       return layerCommand(pc, op);
+        }
+    }
+
+    private int sequenceCommand(int pc, int op) {
+        switch (op) {
+            case 0xFE: case 0xF7: case 0xF1: case 0xD4:
+                return 1;
+            case 0xFD:
+                return 1 + var(pc + 1);
+            case 0xF8: case 0xF2: case 0xDF: case 0xDE: case 0xDC: case 0xDB: case 0xD9:
+            case 0xD5: case 0xD3: case 0xD0: case 0xCC: case 0xC9: case 0xC8:
+                u8(pc + 1);
+                return 2;
+            case 0xDD:
+                v.tempo(pc, u8(pc + 1));
+                return 2;
+            case 0xFA: case 0xF9: case 0xF5: case 0xD7: case 0xD6: case 0xD2: case 0xD1:
+                u16(pc + 1);
+                return 3;
+            case 0xDA:
+                u8(pc + 3);
+                return 4;
+            default:
+                break;
+        }
+        if (op >= 0xC0) return -1;
+        switch (op & 0xF0) {
+            case 0x00: case 0x50: case 0x70: case 0x80:  // testchdisabled, subvariation, set/getvariation
+                return 1;
+            case 0x90: {                                 // startchannel
+                int target = u16(pc + 1);
+                int ch = op & 0xF;
+                v.channel(ch, target);
+                pending.add(new int[] { M64Visitor.Script.CHANNEL.ordinal(), target, ch, -1, 0 });
+                return 3;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    private int channelCommand(int pc, int op) {
+        switch (op) {
+            case 0xFE: case 0xF7: case 0xF6: case 0xF1: case 0xC5: case 0xE4:
+                return 1;
+            case 0xC3:                                   // largenotesoff
+                largeNotes = false;
+                return 1;
+            case 0xC4:                                   // largenoteson
+                largeNotes = true;
+                return 1;
+            case 0xFD:
+                return 1 + var(pc + 1);
+            case 0xF8: case 0xF2: case 0xC6: case 0xC8: case 0xC9: case 0xCA: case 0xCC: case 0xD0:
+            case 0xD1: case 0xD2: case 0xD3: case 0xD4: case 0xD6: case 0xD7: case 0xD8: case 0xD9:
+            case 0xDB: case 0xDC: case 0xDD: case 0xDF: case 0xE0: case 0xE3:
+                u8(pc + 1);
+                return 2;
+            case 0xC1:
+                v.instrument(channel, -1, pc, u8(pc + 1));
+                return 2;
+            case 0xFA: case 0xF9: case 0xF5: case 0xC2: case 0xCB: case 0xDA: case 0xDE:
+                u16(pc + 1);
+                return 3;
+            case 0xC7: case 0xE1: case 0xE2:
+                u8(pc + 3);
+                return 4;
+            default:
+                break;
+        }
+        if (op >= 0xC0) return -1;
+        int n = op & 0xF;
+        switch (op & 0xF0) {
+            case 0x00: case 0x20: case 0x50: case 0x60: case 0x70: case 0x80:
+                return 1;                                // testlayerfinished, disablechannel, io reads/writes, notepriority
+            case 0xA0: case 0xB0:
+                return 1;                                // freelayer, dynsetlayer
+            case 0x30: case 0x40:                        // iowriteval2, ioreadval2
+                u8(pc + 1);
+                return 2;
+            case 0x10: {                                 // startchannel
+                int target = u16(pc + 1);
+                v.channel(n, target);
+                pending.add(new int[] { M64Visitor.Script.CHANNEL.ordinal(), target, n, -1, 0 });
+                return 3;
+            }
+            case 0x90: {                                 // setlayer; only layers 0-3 exist
+                int target = u16(pc + 1);
+                if (n < 4) {
+                    v.layer(channel, n, target);
+                    pending.add(new int[] { M64Visitor.Script.LAYER.ordinal(), target, channel, n, largeNotes ? 1 : 0 });
+                }
+                return 3;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    private int layerCommand(int pc, int op) {
+        switch (op) {
+            case 0xF7: case 0xC4: case 0xC5: case 0xC8:
+                return 1;
+            case 0xF8: case 0xC1: case 0xC2: case 0xC9: case 0xCA:
+                u8(pc + 1);
+                return 2;
+            case 0xC6:
+                v.instrument(channel, layer, pc, u8(pc + 1));
+                return 2;
+            case 0xC0: case 0xC3:
+                return 1 + var(pc + 1);
+            case 0xC7: {                                 // portamento: mode, pitch, then u8 or var time
+                int mode = u8(pc + 1);
+                u8(pc + 2);
+                if ((mode & 0x80) != 0) {
+                    u8(pc + 3);
+                    return 4;
+                }
+                return 3 + var(pc + 3);
+            }
+            default:
+                break;
+        }
+        if (op >= 0xD0 && op <= 0xEF) return 1;          // velocity/duration from table
+        if (op >= 0xC0) return -1;
+
+        int pitch = op & 0x3F;
+        int p = pc + 1;
+        int velocity = -1, duration = -1;
+        switch (op & 0xC0) {
+            case 0x00:
+                p += var(p);
+                if (largeNotes) {
+                    velocity = u8(p++);
+                    duration = u8(p++);
+                }
+                break;
+            case 0x40:
+                if (largeNotes) {
+                    p += var(p);
+                    velocity = u8(p++);
+                }
+                break;
+            default:
+                if (largeNotes) {
+                    velocity = u8(p++);
+                    duration = u8(p++);
+                }
+                break;
+        }
+        v.note(channel, layer, pc, p - pc, pitch, velocity, duration);
+        return p - pc;
+    }
+
+    private int u8(int p) {
+        if (p >= size) throw TRUNCATED;
+        return seq.get(p) & 0xFF;
+    }
+
+    private int u16(int p) {
+        return (u8(p) << 8) | u8(p + 1);
+    }
+
+    /** Length (1 or 2) of the variable-length value at {@code p}; its value is not needed here. */
+    private int var(int p) {
+        if ((u8(p) & 0x80) == 0) return 1;
+        u8(p + 1);
+        return 2;
+    }
+}
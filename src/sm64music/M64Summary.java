@@ -0,0 +1,104 @@
+package sm64music;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * {@link M64Visitor} that boils a sequence down to the numbers people usually want: channels
+ * used, tempo, instruments and where the note data lives (for corruptors that should only touch
+ * notes).
+ */
+public class M64Summary implements M64Visitor {
+    private int channelMask;
+    private int tempo = -1;          // first tempo set by the sequence script
+    private final BitSet instruments = new BitSet();
+    private int commands, notes, errors;
+    private int[] noteStarts = new int[64];
+    private int[] noteEnds = new int[64];
+
+    public static M64Summary of(RomReader rom, SequenceEntry se) {
+        M64Summary s = new M64Summary();
+        M64Parser.parse(rom, se, s);
+        return s;
+    }
+
+    @Override
+    public void command(Script script, int channel, int layer, int offset, int opcode, int length) {
+        commands++;
+    }
+
+    @Override
+    public void channel(int channel, int offset) {
+        channelMask |= 1 << channel;
+    }
+
+    @Override
+    public void tempo(int offset, int bpm) {
+        if (tempo < 0) tempo = bpm;
+    }
+
+    @Override
+    public void instrument(int channel, int layer, int offset, int instrument) {
+        instruments.set(instrument);
+    }
+
+    @Override
+    public void note(int channel, int layer, int offset, int length, int pitch, int velocity, int duration) {
+        if (notes == noteStarts.length) {
+            noteStarts = Arrays.copyOf(noteStarts, notes * 2);
+            noteEnds = Arrays.copyOf(noteEnds, notes * 2);
+        }
+        noteStarts[notes] = offset;
+        noteEnds[notes] = offset + length;
+        notes++;
+    }
+
+    @Override
+    public void error(Script script, int offset, String message) {
+        errors++;
+    }
+
+    public int channelCount() {
+        return Integer.bitCount(channelMask);
+    }
+
+    public int tempo() {
+        return tempo;
+    }
+
+    public BitSet instruments() {
+        return (BitSet) instruments.clone();
+    }
+
+    public int noteCount() {
+        return notes;
+    }
+
+    /**
+     * Note instructions as merged {@code [start, end)} pairs relative to the sequence start,
+     * flattened as {@code start0, end0, start1, end1, ...}.
+     */
+    public int[] noteRanges() {
+        long[] packed = new long[notes];
+        for (int i = 0; i < notes; i++) packed[i] = ((long) noteStarts[i] << 32) | noteEnds[i];
+        Arrays.sort(packed);
+        int[] out = new int[notes * 2];
+        int n = 0;
+        for (long p : packed) {
+            int s = (int) (p >>> 32), e = (int) p;
+            if (n > 0 && s <= out[n - 1]) {
+                out[n - 1] = Math.max(out[n - 1], e);
+            } else {
+                out[n++] = s;
+                out[n++] = e;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d channels, tempo %d, %d instruments, %d commands, %d notes, %d errors",
+                channelCount(), tempo, instruments.cardinality(), commands, notes, errors);
+    }
+}
@@ -0,0 +1,30 @@
+package sm64music;
+
+/**
+ * Receives events from {@link M64Parser}. All offsets are relative to the start of the
+ * sequence; add {@link SequenceEntry#seqOffset} for ROM offsets. Every method defaults to a
+ * no-op, so visitors only override what they need.
+ */
+public interface M64Visitor {
+    enum Script { SEQUENCE, CHANNEL, LAYER }
+
+    /** Every decoded instruction, once per offset. {@code channel}/{@code layer} are -1 where n/a. */
+    default void command(Script script, int channel, int layer, int offset, int opcode, int length) { }
+
+    /** A channel script started by the sequence script. */
+    default void channel(int channel, int offset) { }
+
+    /** A note layer script started by a channel script. */
+    default void layer(int channel, int layer, int offset) { }
+
+    default void tempo(int offset, int bpm) { }
+
+    /** Instrument selected by a channel ({@code layer} = -1) or by a layer. */
+    default void instrument(int channel, int layer, int offset, int instrument) { }
+
+    /** A note instruction; {@code velocity}/{@code duration} are -1 when the encoding omits them. */
+    default void note(int channel, int layer, int offset, int length, int pitch, int velocity, int duration) { }
+
+    /** The walk of one script stopped early (unknown opcode, truncated data, bad target). */
+    default void error(Script script, int offset, String message) { }
+}
@@ -0,0 +1,222 @@
+package sm64music;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streams ranges to a text file in one of several {@link Format}s.
+ *
+ * <p>Ranges are {@code [start, end)} ROM offsets. Lines are built in a char buffer with
+ * hand-rolled hex, so exporting is one pass with no per-line formatting or allocation. With
+ * {@code coalesce}, a range that overlaps or touches the previous one is merged into it before
+ * anything is written; ranges fed in offset order (as scans produce them) therefore come out
+ * fully merged in linear time.
+ */
+public final class RangeExporter implements Closeable {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String NL = System.lineSeparator();
+
+    public enum Format {
+        /** {@code RANGE: 7B0870-7B0A10}, the format the tool has always written. */
+        RANGE("Range list", "txt") {
+            @Override
+            void range(RangeExporter w, int start, int end) {
+                w.put("RANGE: ").hex(start, 6).put('-').hex(end, 6).put(NL);
+            }
+        },
+        /** {@code start,end,length} with a header row; offsets in 0x hex, length in decimal. */
+        CSV("CSV", "csv") {
+            @Override
+            void begin(RangeExporter w) {
+                w.put("start,end,length").put(NL);
+            }
+
+            @Override
+            void range(RangeExporter w, int start, int end) {
+                w.put("0x").hex(start, 6).put(",0x").hex(end, 6).put(',').dec(end - start).put(NL);
+            }
+        },
+        /** An array of {@code {"start":n,"end":n}} objects with decimal offsets. */
+        JSON("JSON", "json") {
+            @Override
+            void begin(RangeExporter w) {
+                w.put('[');
+            }
+
+            @Override
+            void range(RangeExporter w, int start, int end) {
+                if (w.count > 0) w.put(',');
+                w.put(NL).put("{\"start\":").dec(start).put(",\"end\":").dec(end).put('}');
+            }
+
+            @Override
+            void end(RangeExporter w) {
+                w.put(NL).put(']').put(NL);
+            }
+        },
+        /**
+         * One {@code START END} pair of bare hex offsets per line, end inclusive, ready to paste
+         * into the start/end byte fields of the Vinesauce ROM Corruptor. It has no documented
+         * range file format; this is the plainest thing its fields accept.
+         */
+        VINESAUCE("Vinesauce corruptor ranges", "txt") {
+            @Override
+            void range(RangeExporter w, int start, int end) {
+                w.hex(start, 6).put(' ').hex(end - 1, 6).put(NL);
+            }
+        };
+
+        public final String description;
+        public final String extension;
+
+        Format(String description, String extension) {
+            this.description = description;
+            this.extension = extension;
+        }
+
+        void begin(RangeExporter w) { }
+
+        abstract void range(RangeExporter w, int start, int end);
+
+        void end(RangeExporter w) { }
+    }
+
+    private final Writer out;
+    private final Format format;
+    private final boolean coalesce;
+    private final char[] buf = new char[8192];
+    private int pos;
+    private int count;                 // ranges written so far
+    private boolean pending;
+    private int pendingStart, pendingEnd;
+
+    public RangeExporter(Writer out, Format format, boolean coalesce) {
+        this.out = out;
+        this.format = format;
+        this.coalesce = coalesce;
+        format.begin(this);
+    }
+
+    /** Export to a new ASCII file at {@code file}. */
+    public static RangeExporter open(Path file, Format format, boolean coalesce) throws IOException {
+        return new RangeExporter(Files.newBufferedWriter(file, StandardCharsets.US_ASCII), format, coalesce);
+    }
+
+    /** Write the ranges of {@code entries} to {@code file}; returns the number of ranges written. */
+    public static int write(Path file, Format format, boolean coalesce, List<SequenceEntry> entries) throws IOException {
+        try (RangeExporter w = open(file, format, coalesce)) {
+            for (SequenceEntry se : entries) w.add(se.seqOffset, se.seqOffset + se.length);
+            w.finish();
+            return w.count;
+        }
+    }
+
+    /** The ranges of {@code entries} as text, e.g. for the clipboard. */
+    public static String toString(Format format, boolean coalesce, List<SequenceEntry> entries) {
+        StringWriter sw = new StringWriter();
+        try (RangeExporter w = new RangeExporter(sw, format, coalesce)) {
+            for (SequenceEntry se : entries) w.add(se.seqOffset, se.seqOffset + se.length);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // StringWriter does not throw
+        }
+        return sw.toString();
+    }
+
+    /** Add {@code [start, end)}; with {@code coalesce}, ranges should come in offset order. */
+    public void add(int start, int end) throws IOException {
+        if (end < start) throw new IllegalArgumentException("Range ends before it starts: " + start + ".." + end);
+        if (pending && coalesce && start >= pendingStart && start <= pendingEnd) {
+            pendingEnd = Math.max(pendingEnd, end);
+            return;
+        }
+        emitPending();
+        pending = true;
+        pendingStart = start;
+        pendingEnd = end;
+    }
+
+    /**
+     * An extra {@code label: OFFSET} line after the ranges so far, such as the MIO0 offsets
+     * {@link BatchScan} appends. Only meaningful in {@link Format#RANGE} files.
+     */
+    public void line(String label, int offset) throws IOException {
+        emitPending();
+        if (pos > buf.length - 64 - label.length()) drain();
+        put(label).put(": ").hex(offset, 6).put(NL);
+    }
+
+    /** Number of ranges written (after coalescing); final once {@link #finish} or {@link #close} ran. */
+    public int count() {
+        return count;
+    }
+
+    /** Write the last range and the format's trailer, and flush. */
+    public void finish() throws IOException {
+        emitPending();
+        format.end(this);
+        drain();
+        out.flush();
+        pos = -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (pos >= 0) finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void emitPending() throws IOException {
+        if (!pending) return;
+        pending = false;
+        format.range(this, pendingStart, pendingEnd);
+        count++;
+        // A line is well under 64 chars, so draining at that margin keeps put() bounds-free.
+        if (pos > buf.length - 64) drain();
+    }
+
+    private void drain() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    private RangeExporter put(char c) {
+        buf[pos++] = c;
+        return this;
+    }
+
+    private RangeExporter put(String s) {
+        s.getChars(0, s.length(), buf, pos);
+        pos += s.length();
+        return this;
+    }
+
+    /** Unsigned uppercase hex, zero-padded to at least {@code minDigits}, as {@code %06X} does. */
+    private RangeExporter hex(int v, int minDigits) {
+        int digits = Math.max(minDigits, (35 - Integer.numberOfLeadingZeros(v)) >> 2);
+        for (int i = pos + digits - 1; i >= pos; i--, v >>>= 4) buf[i] = HEX[v & 0xF];
+        pos += digits;
+        return this;
+    }
+
+    private RangeExporter dec(int v) {
+        if (v < 0) {
+            buf[pos++] = '-';
+            if (v == Integer.MIN_VALUE) return put("2147483648");
+            v = -v;
+        }
+        int digits = 1;
+        for (int t = v; t >= 10; t /= 10) digits++;
+        for (int i = pos + digits - 1; i >= pos; i--, v /= 10) buf[i] = (char) ('0' + v % 10);
+        pos += digits;
+        return this;
+    }
+}
@@ -0,0 +1,451 @@
+package sm64music;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sequence, sound bank and MIO0 ranges of a whole ROM corpus in one queryable index.
+ *
+ * <p>Ranges are stored column-wise in primitive buffers, sorted by offset: offset, length,
+ * ROM number, entry id, kind and a {@link RomHash} of the range's bytes. The sorted rows double
+ * as an implicit interval tree: read in order, they are a complete binary search tree on
+ * offset whose node {@code i} sits at level {@code trailingOnes(i)}. Each row also stores the
+ * largest end in its subtree, so "which ranges contain X" and "which ranges overlap [a, b)"
+ * cost O(log n + hits) however long the longest range is. A second ordering by hash groups
+ * identical data across ROMs. The same layout is the file format, so {@link #load} just
+ * memory-maps the file and wraps views around it.
+ */
+public final class RangeIndex {
+    public enum Kind { SEQUENCE, CTL, TBL, MIO0 }
+
+    private static final int MAGIC = 0x534D5249; // "SMRI"
+    private static final int VERSION = 2;
+    private static final int HEADER = 16;
+    private static final Kind[] KINDS = Kind.values();
+    /** Subtrees this small are scanned linearly rather than descended. */
+    private static final int SCAN_LEVEL = 3;
+
+    private final int size;
+    private final LongBuffer hashes;
+    private final IntBuffer offsets;
+    private final IntBuffer lengths;
+    private final IntBuffer roms;
+    private final IntBuffer ids;
+    private final IntBuffer maxEnds;   // max(end) over the implicit-tree subtree rooted at row i
+    private final IntBuffer byHash;    // rows ordered by hash
+    private final ByteBuffer kinds;
+    private final String[] romNames;
+
+    private RangeIndex(int size, LongBuffer hashes, IntBuffer offsets, IntBuffer lengths, IntBuffer roms,
+                       IntBuffer ids, IntBuffer maxEnds, IntBuffer byHash, ByteBuffer kinds, String[] romNames) {
+        this.size = size;
+        this.hashes = hashes;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.roms = roms;
+        this.ids = ids;
+        this.maxEnds = maxEnds;
+        this.byHash = byHash;
+        this.kinds = kinds;
+        this.romNames = romNames;
+    }
+
+    /** Number of ranges; rows are numbered {@code 0..size()-1} in offset order. */
+    public int size()              { return size; }
+    public int romCount()          { return romNames.length; }
+    public String romName(int rom) { return romNames[rom]; }
+
+    public int offset(int row)     { return offsets.get(row); }
+    public int length(int row)     { return lengths.get(row); }
+    public int end(int row)        { return offsets.get(row) + lengths.get(row); }
+    public int rom(int row)        { return roms.get(row); }
+    /** Sequence or bank id, or -1 for MIO0 blocks. */
+    public int id(int row)         { return ids.get(row); }
+    public Kind kind(int row)      { return KINDS[kinds.get(row)]; }
+    public long hash(int row)      { return hashes.get(row); }
+
+    /** Rows whose range contains {@code offset}, ascending. */
+    public int[] containing(int offset) {
+        return overlapping(offset, offset + 1);
+    }
+
+    /** Rows whose range intersects {@code [from, to)}, ascending. */
+    public int[] overlapping(int from, int to) {
+        int[] out = new int[8];
+        int n = 0;
+        if (size == 0) return new int[0];
+        // In-order walk of the implicit tree with an explicit stack of (level, row, right side
+        // pending). A left subtree is skipped when its largest end does not reach from, and
+        // nodes at or past to end the walk on their side. Rows >= size are placeholders that
+        // complete the tree; only their left subtrees hold rows.
+        int[] level = new int[64], node = new int[64];
+        boolean[] right = new boolean[64];
+        int sp = 0;
+        level[sp] = rootLevel(size);
+        node[sp] = (1 << level[sp]) - 1;
+        right[sp++] = false;
+        while (sp > 0) {
+            int k = level[--sp], x = node[sp];
+            if (k <= SCAN_LEVEL) {
+                int i0 = x >> k << k, i1 = Math.min(i0 + (1 << (k + 1)) - 1, size);
+                for (int i = i0; i < i1 && offsets.get(i) < to; i++) {
+                    if (end(i) > from) {
+                        if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                        out[n++] = i;
+                    }
+                }
+            } else if (!right[sp]) {
+                int y = x - (1 << (k - 1));
+                right[sp++] = true;              // revisit x after its left subtree
+                if (y >= size || maxEnds.get(y) > from) {
+                    level[sp] = k - 1;
+                    node[sp] = y;
+                    right[sp++] = false;
+                }
+            } else if (x < size && offsets.get(x) < to) {
+                if (end(x) > from) {
+                    if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                    out[n++] = x;
+                }
+                level[sp] = k - 1;
+                node[sp] = x + (1 << (k - 1));
+                right[sp++] = false;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Level of the implicit tree's root: the smallest tree of {@code 2^(k+1) - 1} nodes holding {@code n} rows. */
+    private static int rootLevel(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /** Rows whose bytes hash to {@code hash}, in hash order. */
+    public int[] withHash(long hash) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(hashes.get(byHash.get(mid)), hash) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        int end = lo;
+        while (end < size && hashes.get(byHash.get(end)) == hash) end++;
+        int[] out = new int[end - lo];
+        for (int i = 0; i < out.length; i++) out[i] = byHash.get(lo + i);
+        return out;
+    }
+
+    /**
+     * Groups of {@code kind} rows with identical bytes in at least two different ROMs, e.g. a
+     * sequence that several hacks left untouched. Each group is an array of rows.
+     */
+    public List<int[]> sharedAcrossRoms(Kind kind) {
+        List<int[]> groups = new ArrayList<>();
+        int[] run = new int[8];
+        int i = 0;
+        while (i < size) {
+            long h = hashes.get(byHash.get(i));
+            int n = 0;
+            boolean manyRoms = false;
+            for (; i < size && hashes.get(byHash.get(i)) == h; i++) {
+                int row = byHash.get(i);
+                if (kinds.get(row) != kind.ordinal()) continue;
+                if (n == run.length) run = Arrays.copyOf(run, n * 2);
+                if (n > 0 && roms.get(row) != roms.get(run[0])) manyRoms = true;
+                run[n++] = row;
+            }
+            if (manyRoms) groups.add(Arrays.copyOf(run, n));
+        }
+        return groups;
+    }
+
+    public String describe(int row) {
+        return String.format("%s %s #%d @0x%06X-0x%06X (len=%d, hash=%016x)", romName(rom(row)), kind(row),
+                id(row), offset(row), end(row), length(row), hash(row));
+    }
+
+    // ---- persistence ----------------------------------------------------------------------
+
+    /** Write the index as {@code header, hashes, int columns, kinds, ROM names}. */
+    public void write(Path file) throws IOException {
+        byte[][] names = new byte[romNames.length][];
+        long namesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = romNames[i].getBytes(StandardCharsets.UTF_8);
+            namesSize += 4 + names[i].length;
+        }
+        long total = HEADER + size * 8L + size * 4L * 6 + size + namesSize;
+        if (total > Integer.MAX_VALUE) throw new IOException("Index too large: " + total + " bytes");
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, total);
+            out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(romNames.length);
+            for (int i = 0; i < size; i++) out.putLong(hashes.get(i));
+            for (IntBuffer col : new IntBuffer[] { offsets, lengths, roms, ids, maxEnds, byHash }) {
+                for (int i = 0; i < size; i++) out.putInt(col.get(i));
+            }
+            for (int i = 0; i < size; i++) out.put(kinds.get(i));
+            for (byte[] name : names) out.putInt(name.length).put(name);
+            out.force();
+        }
+    }
+
+    public void write(File file) throws IOException {
+        write(file.toPath());
+    }
+
+    /** Map an index file read-only; columns are views of the mapping, only ROM names are decoded. */
+    public static RangeIndex load(Path file) throws IOException {
+        ByteBuffer map;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Index too large: " + file);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (map.limit() < HEADER || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a range index (or wrong version): " + file);
+        }
+        int n = map.getInt(8);
+        int romCount = map.getInt(12);
+        long namesAt = HEADER + n * 8L + n * 4L * 6 + n;
+        if (n < 0 || romCount < 0 || namesAt > map.limit()) throw new IOException("Truncated range index: " + file);
+
+        int p = HEADER;
+        LongBuffer hashes = section(map, p, n * 8).asLongBuffer();
+        p += n * 8;
+        IntBuffer[] cols = new IntBuffer[6];
+        for (int c = 0; c < cols.length; c++, p += n * 4) cols[c] = section(map, p, n * 4).asIntBuffer();
+        ByteBuffer kinds = section(map, p, n);
+        p += n;
+
+        String[] names = new String[romCount];
+        ByteBuffer b = map.duplicate().position(p);
+        try {
+            for (int i = 0; i < romCount; i++) {
+                byte[] name = new byte[b.getInt()];
+                b.get(name);
+                names[i] = new String(name, StandardCharsets.UTF_8);
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt ROM names in range index: " + file, ex);
+        }
+        return new RangeIndex(n, hashes, cols[0], cols[1], cols[2], cols[3], cols[4], cols[5], kinds, names);
+    }
+
+    private static ByteBuffer section(ByteBuffer map, int at, int len) {
+        return map.duplicate().position(at).limit(at + len).slice();
+    }
+
+    // ---- building -------------------------------------------------------------------------
+
+    /**
+     * Collects ranges ROM by ROM; thread-safe, so parallel scanners can share one. Hashing is
+     * done outside the lock.
+     */
+    public static final class Builder {
+        private final List<String> romNames = new ArrayList<>();
+        private int size;
+        private long[] hashes = new long[1024];
+        private int[] offsets = new int[1024];
+        private int[] lengths = new int[1024];
+        private int[] roms = new int[1024];
+        private int[] ids = new int[1024];
+        private byte[] kinds = new byte[1024];
+
+        /**
+         * Add one ROM's sequences, sound bank entries and MIO0 blocks (any may be empty);
+         * returns its ROM number. MIO0 blocks whose streams do not parse are skipped.
+         */
+        public int addRom(String name, RomReader rom, List<SequenceEntry> sequences,
+                          List<SoundBankEntry> banks, int[] mio0Offsets) {
+            int n = sequences.size() + banks.size() + mio0Offsets.length;
+            long[] h = new long[n];
+            int[] off = new int[n], len = new int[n], id = new int[n];
+            byte[] kind = new byte[n];
+            int k = 0;
+            for (SequenceEntry se : sequences) {
+                off[k] = se.seqOffset;
+                len[k] = se.length;
+                id[k] = se.id;
+                kind[k] = (byte) Kind.SEQUENCE.ordinal();
+                h[k++] = RomHash.hash(rom, se.seqOffset, se.length, 0);
+            }
+            for (SoundBankEntry be : banks) {
+                off[k] = be.offset;
+                len[k] = be.length;
+                id[k] = be.id;
+                kind[k] = (byte) (be.kind == SoundBankEntry.Kind.CTL ? Kind.CTL : Kind.TBL).ordinal();
+                h[k++] = RomHash.hash(rom, be.offset, be.length, 0);
+            }
+            for (int o : mio0Offsets) {
+                int size;
+                try {
+                    size = RomIndexCache.mio0Size(rom, o);
+                } catch (IOException ex) {
+                    continue;
+                }
+                off[k] = o;
+                len[k] = size;
+                id[k] = -1;
+                kind[k] = (byte) Kind.MIO0.ordinal();
+                h[k++] = RomHash.hash(rom, o, size, 0);
+            }
+
+            synchronized (this) {
+                int romId = romNames.size();
+                romNames.add(name);
+                ensure(size + k);
+                System.arraycopy(h, 0, hashes, size, k);
+                System.arraycopy(off, 0, offsets, size, k);
+                System.arraycopy(len, 0, lengths, size, k);
+                System.arraycopy(id, 0, ids, size, k);
+                System.arraycopy(kind, 0, kinds, size, k);
+                Arrays.fill(roms, size, size + k, romId);
+                size += k;
+                return romId;
+            }
+        }
+
+        private void ensure(int n) {
+            if (n <= offsets.length) return;
+            int cap = Math.max(n, offsets.length * 2);
+            hashes = Arrays.copyOf(hashes, cap);
+            offsets = Arrays.copyOf(offsets, cap);
+            lengths = Arrays.copyOf(lengths, cap);
+            roms = Arrays.copyOf(roms, cap);
+            ids = Arrays.copyOf(ids, cap);
+            kinds = Arrays.copyOf(kinds, cap);
+        }
+
+        public synchronized RangeIndex build() {
+            // Offset order (ties by insertion order): sort packed (offset, row) keys.
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) keys[i] = ((long) offsets[i] << 32) | i;
+            Arrays.sort(keys);
+
+            long[] h = new long[size];
+            int[] off = new int[size], len = new int[size], rom = new int[size], id = new int[size];
+            byte[] kind = new byte[size];
+            for (int i = 0; i < size; i++) {
+                int r = (int) keys[i];
+                h[i] = hashes[r];
+                off[i] = offsets[r];
+                len[i] = lengths[r];
+                rom[i] = roms[r];
+                id[i] = ids[r];
+                kind[i] = kinds[r];
+            }
+            int[] maxEnd = subtreeMaxEnds(off, len, size);
+
+            int[] byHash = new int[size];
+            for (int i = 0; i < size; i++) byHash[i] = i;
+            sortByKey(byHash, h);
+
+            return new RangeIndex(size, LongBuffer.wrap(h), IntBuffer.wrap(off), IntBuffer.wrap(len),
+                    IntBuffer.wrap(rom), IntBuffer.wrap(id), IntBuffer.wrap(maxEnd), IntBuffer.wrap(byHash),
+                    ByteBuffer.wrap(kind), romNames.toArray(new String[0]));
+        }
+
+        /**
+         * Largest end in each implicit-tree subtree, bottom up one level at a time. Leaves are
+         * the even rows; the node at level {@code k} has children {@code 2^(k-1)} rows either
+         * side.
+         */
+        private static int[] subtreeMaxEnds(int[] off, int[] len, int n) {
+            int[] max = new int[n];
+            for (int i = 0; i < n; i += 2) max[i] = off[i] + len[i];
+            for (int k = 1; 1 << k <= n; k++) {
+                int half = 1 << (k - 1);
+                for (int i = half * 2 - 1; i < n; i += half * 4) {
+                    int right = subtreeMax(max, n, i + half, k - 1);
+                    max[i] = Math.max(off[i] + len[i], Math.max(max[i - half], right));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * {@code max[x]} for a node at level {@code k}; a node past the last row has no right
+         * subtree, so its maximum is that of its left child. At most one node per level needs
+         * this walk.
+         */
+        private static int subtreeMax(int[] max, int n, int x, int k) {
+            for (; x >= n; k--) {
+                if (k == 0) return Integer.MIN_VALUE;
+                x -= 1 << (k - 1);
+            }
+            return max[x];
+        }
+
+        /** Stable merge sort of {@code rows} by unsigned {@code key[row]}, without boxing. */
+        private static void sortByKey(int[] rows, long[] key) {
+            int[] tmp = new int[rows.length];
+            for (int width = 1; width < rows.length; width <<= 1) {
+                for (int lo = 0; lo < rows.length; lo += width << 1) {
+                    int mid = Math.min(lo + width, rows.length);
+                    int hi = Math.min(lo + (width << 1), rows.length);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid && j < hi) {
+                        tmp[k++] = Long.compareUnsigned(key[rows[j]], key[rows[i]]) < 0 ? rows[j++] : rows[i++];
+                    }
+                    while (i < mid) tmp[k++] = rows[i++];
+                    while (j < hi) tmp[k++] = rows[j++];
+                }
+                System.arraycopy(tmp, 0, rows, 0, rows.length);
+            }
+        }
+    }
+
+    // ---- command line ---------------------------------------------------------------------
+
+    private static void usage() {
+        System.err.println("Usage: RangeIndex <index> (stats | contains <offset> | overlaps <from> <to> | shared [kind])");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) usage();
+        long t0 = System.nanoTime();
+        RangeIndex index = load(new File(args[0]).toPath());
+        int[] rows;
+        switch (args[1]) {
+            case "stats":
+                System.out.printf("[INDEX] %d ranges from %d ROMs%n", index.size(), index.romCount());
+                return;
+            case "contains":
+                if (args.length != 3) usage();
+                rows = index.containing(Integer.decode(args[2]));
+                break;
+            case "overlaps":
+                if (args.length != 4) usage();
+                rows = index.overlapping(Integer.decode(args[2]), Integer.decode(args[3]));
+                break;
+            case "shared": {
+                Kind kind = args.length > 2 ? Kind.valueOf(args[2].toUpperCase()) : Kind.SEQUENCE;
+                List<int[]> groups = index.sharedAcrossRoms(kind);
+                for (int[] g : groups) {
+                    System.out.printf("hash %016x in %d ranges:%n", index.hash(g[0]), g.length);
+                    for (int row : g) System.out.println("  " + index.describe(row));
+                }
+                System.out.printf("[INDEX] %d shared group(s) in %d ms%n", groups.size(), (System.nanoTime() - t0) / 1_000_000);
+                return;
+            }
+            default:
+                usage();
+                return;
+        }
+        for (int row : rows) System.out.println(index.describe(row));
+        System.out.printf("[INDEX] %d range(s) in %d ms%n", rows.length, (System.nanoTime() - t0) / 1_000_000);
+    }
+}
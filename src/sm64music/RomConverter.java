@@ -0,0 +1,73 @@
+package sm64music;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts .n64/.v64 images to .z64 one chunk at a time, so memory use stays at two chunk
+ * buffers whatever the ROM size. Chunks are a multiple of 8 bytes, so every chunk but the last
+ * starts and ends on a word boundary and is normalized with whole-word swaps.
+ */
+public final class RomConverter {
+    static final int CHUNK = 1 << 20;
+
+    private RomConverter() { }
+
+    /** Convert {@code in} to .z64 at {@code out}; returns the byte order {@code in} was stored in. */
+    public static RomFormat convert(Path in, Path out) throws IOException {
+        if (Files.exists(out) && Files.isSameFile(in, out)) {
+            throw new IOException("Refusing to convert " + in + " onto itself");
+        }
+        ByteBuffer src = ByteBuffer.allocateDirect(CHUNK);
+        ByteBuffer dst = ByteBuffer.allocateDirect(CHUNK);
+        try (FileChannel r = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel w = FileChannel.open(out, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RomFormat format = null;
+            while (fill(r, src)) {
+                src.flip();
+                if (format == null) format = src.remaining() >= 4 ? RomFormat.detect(src.getInt(0)) : RomFormat.Z64;
+                format.normalize(src, dst);
+                dst.flip();
+                while (dst.hasRemaining()) w.write(dst);
+                src.clear();
+                dst.clear();
+            }
+            return format != null ? format : RomFormat.Z64;
+        }
+    }
+
+    /** Read until {@code buf} is full or the file ends; false if nothing was read. */
+    private static boolean fill(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) break;
+        }
+        return buf.position() > 0;
+    }
+
+    /** {@code dir/name.z64} for {@code rom}, replacing a .n64/.v64/.z64 extension. */
+    static Path z64Path(Path rom) {
+        String name = rom.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return rom.resolveSibling(name + RomFormat.Z64.extension);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: RomConverter <rom.n64|rom.v64> [out.z64]");
+            System.exit(2);
+        }
+        Path in = new File(args[0]).toPath();
+        Path out = args.length > 1 ? new File(args[1]).toPath() : z64Path(in);
+        long t0 = System.nanoTime();
+        RomFormat from = convert(in, out);
+        System.out.printf("[CONVERT] %s (%s) -> %s in %d ms%n", in, from.extension, out,
+                (System.nanoTime() - t0) / 1_000_000);
+    }
+}
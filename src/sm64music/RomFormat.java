@@ -0,0 +1,75 @@
+package sm64music;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Byte order of an N64 ROM image as it is stored on disk. */
+public enum RomFormat {
+    Z64(0, ".z64"),  // big-endian (native)
+    N64(1, ".n64"),  // byte-swapped pairs
+    V64(3, ".v64");  // word-swapped quads
+
+    /** XOR applied to a big-endian offset to find that byte in the stored image. */
+    final int swapMask;
+    public final String extension;
+
+    RomFormat(int swapMask, String extension) {
+        this.swapMask = swapMask;
+        this.extension = extension;
+    }
+
+    private static final long LOW_BYTES = 0x00FF00FF00FF00FFL;
+
+    /** Detect the byte order from the first 4 stored bytes (the PI config word). */
+    public static RomFormat detect(int firstWord) {
+        if (firstWord == 0x37804012) return N64;
+        if (firstWord == 0x40123780) return V64;
+        return Z64;
+    }
+
+    /**
+     * Copy the stored bytes between {@code src}'s position and limit into {@code dst} in .z64
+     * (big-endian) order, advancing both. Whole 8-byte words are swapped at once; {@code src}
+     * should start on a swap-unit boundary of the image (2 bytes for .n64, 4 for .v64), and a
+     * trailing partial unit is copied as-is, as {@link RomReader} does.
+     */
+    public void normalize(ByteBuffer src, ByteBuffer dst) {
+        int n = src.remaining();
+        if (dst.remaining() < n) throw new IllegalArgumentException("Destination too small: " + dst.remaining() + " < " + n);
+        if (this == Z64) {
+            dst.put(src);
+            return;
+        }
+        ByteOrder srcOrder = src.order(), dstOrder = dst.order();
+        src.order(ByteOrder.BIG_ENDIAN);
+        dst.order(ByteOrder.BIG_ENDIAN);
+        int sp = src.position(), dp = dst.position();
+        int words = n & ~7;
+        for (int i = 0; i < words; i += 8) dst.putLong(dp + i, swapLong(src.getLong(sp + i)));
+        int unit = swapMask + 1;
+        int i = words;
+        for (; i + unit <= n; i += unit) {
+            long w = 0;   // read the whole unit first: src and dst may be the same memory
+            for (int k = 0; k < unit; k++) w = (w << 8) | (src.get(sp + i + (k ^ swapMask)) & 0xFF);
+            for (int k = unit - 1; k >= 0; k--, w >>>= 8) dst.put(dp + i + k, (byte) w);
+        }
+        for (; i < n; i++) dst.put(dp + i, src.get(sp + i));
+        src.position(sp + n).order(srcOrder);
+        dst.position(dp + n).order(dstOrder);
+    }
+
+    /** Normalize a whole image in place. */
+    public void normalize(byte[] image) {
+        ByteBuffer b = ByteBuffer.wrap(image);
+        normalize(b.duplicate(), b);
+    }
+
+    /** One stored 8-byte word in big-endian order; {@code N64} swaps pairs, {@code V64} reverses quads. */
+    long swapLong(long x) {
+        switch (this) {
+            case N64: return ((x >>> 8) & LOW_BYTES) | ((x & LOW_BYTES) << 8);
+            case V64: return Long.rotateLeft(Long.reverseBytes(x), 32);
+            default:  return x;
+        }
+    }
+}
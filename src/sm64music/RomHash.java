@@ -0,0 +1,39 @@
+package sm64music;
+
+import java.nio.ByteBuffer;
+
+/** Fast non-cryptographic 64-bit hash over ROM ranges, 8 bytes per step. */
+public final class RomHash {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+    private RomHash() { }
+
+    /** Hash of {@code buf[off, off+len)} (absolute indices, buffer position ignored). */
+    public static long hash(ByteBuffer buf, int off, int len, long seed) {
+        long h = seed ^ (len * P1);
+        int i = off;
+        int end = off + len;
+        for (; i + 8 <= end; i += 8) h = mix(h, buf.getLong(i));
+        long tail = 0;
+        for (; i < end; i++) tail = (tail << 8) | (buf.get(i) & 0xFF);
+        return finish(mix(h, tail));
+    }
+
+    /** Hash of a big-endian range of the ROM, whatever its stored byte order. */
+    public static long hash(RomReader rom, int off, int len, long seed) {
+        ByteBuffer b = rom.slice(off, len);
+        return hash(b, 0, b.limit(), seed);
+    }
+
+    private static long mix(long h, long w) {
+        return Long.rotateLeft(h ^ (w * P2), 31) * P1;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        return h;
+    }
+}
@@ -0,0 +1,252 @@
+package sm64music;
+
+import sm64metrics.Metrics;
+import sm64metrics.Stage;
+import sm64mio.MIO0Decoder;
+import sm64mio.MIO0Header;
+import sm64mio.MIO0Scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of parsed ROM indexes (sequence table and MIO0 block offsets).
+ *
+ * <p>Each ROM gets one small {@code <key>.idx} file, where the key hashes the ROM size, the
+ * 0x40-byte header and the {@code MUSIC_START..MUSIC_END} region. Banks discovered elsewhere in
+ * the ROM are not covered by that key, so each entry also records its bank's location and a
+ * hash of the bank's offset table, which is re-checked on every hit. MIO0 offsets are
+ * cached under the same key; tools that rewrite MIO0 data elsewhere in the ROM should
+ * {@link #evict(long)} it. Files are touched on every hit and the least recently used ones
+ * are deleted once the directory grows past its size cap.
+ */
+public class RomIndexCache {
+    private static final int MAGIC = 0x534D4958; // "SMIX"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".idx";
+    private static final int SCAN_WINDOW = 1 << 20;
+
+    /** Cached index of one ROM; {@code mio0Offsets} is null if the ROM was never scanned. */
+    public static class Entry {
+        public final List<SequenceEntry> sequences;
+        public final int[] mio0Offsets;
+        final long tableHash;
+
+        Entry(List<SequenceEntry> sequences, int[] mio0Offsets, long tableHash) {
+            this.sequences = Collections.unmodifiableList(sequences);
+            this.mio0Offsets = mio0Offsets;
+            this.tableHash = tableHash;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+
+    public RomIndexCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /** {@code ~/.sm64music/cache}, capped at 16 MB (a few thousand ROMs). */
+    public static RomIndexCache openDefault() {
+        File home = new File(System.getProperty("user.home"), ".sm64music");
+        return new RomIndexCache(new File(home, "cache"), 16L << 20);
+    }
+
+    public static long key(RomReader rom) {
+        long h = RomHash.hash(rom, 0, 0x40, rom.size());
+        return RomHash.hash(rom, RomReader.MUSIC_START, RomReader.MUSIC_END - RomReader.MUSIC_START, h);
+    }
+
+    /**
+     * Index {@code rom}, reusing the cached entry when the key matches and parsing (and, with
+     * {@code withMio0}, scanning) only what is missing. Cache I/O failures never fail the call.
+     */
+    public Entry index(RomReader rom, boolean withMio0) {
+        return index(rom, withMio0, Metrics.NONE);
+    }
+
+    /** As above, recording the parse and scan work done on a miss in {@code metrics}. */
+    public Entry index(RomReader rom, boolean withMio0, Metrics metrics) {
+        long key = key(rom);
+        Entry e = load(key);
+        if (e != null && !tableMatches(rom, e)) e = null;
+        if (e != null && (!withMio0 || e.mio0Offsets != null)) return e;
+
+        List<SequenceEntry> sequences = e != null ? e.sequences : parseSequences(rom, metrics);
+        int[] mio0 = e != null ? e.mio0Offsets : null;
+        if (withMio0) mio0 = scanMio0(rom, metrics);
+        e = new Entry(sequences, mio0, tableHash(rom, bankStart(sequences)));
+        try {
+            store(key, e);
+        } catch (IOException ex) {
+            RomReader.LOG.warning("[CACHE] Could not store index: " + ex.getMessage());
+        }
+        return e;
+    }
+
+    /** {@link RomReader#parseSequences()}, timed as {@link Stage#PARSE}. */
+    static List<SequenceEntry> parseSequences(RomReader rom, Metrics metrics) {
+        try (Metrics.Span span = metrics.time(Stage.PARSE)) {
+            List<SequenceEntry> sequences = rom.parseSequences();
+            for (SequenceEntry se : sequences) span.add(se.length, 1);
+            return sequences;
+        }
+    }
+
+    /**
+     * MIO0 scan of the default range, a 1 MB window at a time: a swapped image is decoded into
+     * one reused window buffer ({@link Stage#NORMALIZE}) instead of copied whole, then scanned
+     * ({@link Stage#SCAN}).
+     */
+    static int[] scanMio0(RomReader rom, Metrics metrics) {
+        int size = rom.size();
+        int start = MIO0Scanner.defaultStart(size), end = MIO0Scanner.defaultEnd(size);
+        boolean swapped = rom.format() != RomFormat.Z64;
+        ByteBuffer buf = swapped ? ByteBuffer.allocate(SCAN_WINDOW + MIO0Header.SIZE + 8) : null;
+        int[] found = new int[0];
+        for (long c = start; c < end; c += SCAN_WINDOW) {
+            int len = (int) Math.min(SCAN_WINDOW, end - c);
+            ByteBuffer window;
+            try (Metrics.Span span = metrics.time(Stage.NORMALIZE)) {
+                // A header starting near the end of the window runs on into the next one.
+                window = rom.slice((int) c, len + MIO0Header.SIZE, buf);
+                span.add(swapped ? window.limit() : 0, 1);
+            }
+            try (Metrics.Span span = metrics.time(Stage.SCAN)) {
+                int[] hits = MIO0Scanner.scanWindow(window, (int) c, len, size);
+                span.add(len, hits.length);
+                if (hits.length > 0) {
+                    int n = found.length;
+                    found = Arrays.copyOf(found, n + hits.length);
+                    System.arraycopy(hits, 0, found, n, hits.length);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * {@link MIO0Decoder#compressedSize} of the block at {@code off}, decoded through a window
+     * no larger than its header says the streams can reach rather than the whole image.
+     */
+    static int mio0Size(RomReader rom, int off) throws IOException {
+        int room = rom.size() - off;
+        MIO0Header h = MIO0Header.read(rom.slice(off, MIO0Header.SIZE), 0, room);
+        if (h == null) throw new IOException(String.format("No valid MIO0 header at 0x%06X", off));
+        return MIO0Decoder.compressedSize(rom.slice(off, (int) Math.min(h.extent(), room)), 0);
+    }
+
+    /** Start of the bank the entries came from, or -1 if there are none. */
+    private static int bankStart(List<SequenceEntry> sequences) {
+        if (sequences.isEmpty()) return -1;
+        return sequences.get(0).bankOffset();
+    }
+
+    /** Hash of a bank's header and offset table, the only bytes the sequence list depends on. */
+    private static long tableHash(RomReader rom, int bank) {
+        if (bank < 0) return 0;
+        ByteBuffer hdr = rom.slice(bank, 4);
+        if (hdr.limit() < 4) return 0;
+        return RomHash.hash(rom, bank, 4 + (hdr.getShort(2) & 0xFFFF) * 8, 0);
+    }
+
+    /** An empty list is never trusted: a bank may have appeared outside the keyed region. */
+    private static boolean tableMatches(RomReader rom, Entry e) {
+        int bank = bankStart(e.sequences);
+        return bank >= 0 && tableHash(rom, bank) == e.tableHash;
+    }
+
+    private File fileFor(long key) {
+        return new File(dir, String.format("%016x", key) + SUFFIX);
+    }
+
+    /** Cached entry for {@code key}, or null if missing or unreadable. */
+    public Entry load(long key) {
+        File f = fileFor(key);
+        ByteBuffer b;
+        try {
+            b = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+        } catch (IOException ex) {
+            return null;
+        }
+        try {
+            if (b.getInt() != MAGIC || b.getInt() != VERSION || b.getLong() != key) return null;
+            long tableHash = b.getLong();
+            int n = b.getInt();
+            if (n < 0 || n > b.remaining() / 16) return null;
+            List<SequenceEntry> sequences = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                sequences.add(new SequenceEntry(b.getInt(), b.getInt(), b.getInt(), b.getInt()));
+            }
+            int m = b.getInt();
+            int[] mio0 = null;
+            if (m >= 0) {
+                if (m > b.remaining() / 4) return null;
+                mio0 = new int[m];
+                b.asIntBuffer().get(mio0);
+            }
+            f.setLastModified(System.currentTimeMillis());
+            return new Entry(sequences, mio0, tableHash);
+        } catch (BufferUnderflowException ex) {
+            return null;
+        }
+    }
+
+    public void store(long key, Entry e) throws IOException {
+        Files.createDirectories(dir.toPath());
+        int m = e.mio0Offsets != null ? e.mio0Offsets.length : 0;
+        ByteBuffer b = ByteBuffer.allocate(4 + 4 + 8 + 8 + 4 + e.sequences.size() * 16 + 4 + m * 4);
+        b.putInt(MAGIC).putInt(VERSION).putLong(key).putLong(e.tableHash).putInt(e.sequences.size());
+        for (SequenceEntry se : e.sequences) {
+            b.putInt(se.id).putInt(se.tableOffset).putInt(se.seqOffset).putInt(se.length);
+        }
+        b.putInt(e.mio0Offsets != null ? m : -1);
+        for (int i = 0; i < m; i++) b.putInt(e.mio0Offsets[i]);
+
+        Path target = fileFor(key).toPath();
+        Path tmp = Files.createTempFile(dir.toPath(), "idx", ".tmp");
+        try {
+            Files.write(tmp, b.array());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        trim();
+    }
+
+    public void evict(long key) {
+        fileFor(key).delete();
+    }
+
+    /** Delete least recently used entries until the cache fits its size cap. */
+    private synchronized void trim() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= maxBytes) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= maxBytes) break;
+            long len = f.length();
+            if (f.delete()) total -= len;
+        }
+    }
+}
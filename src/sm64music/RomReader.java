@@ -1,53 +1,137 @@
 package sm64music;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.logging.Logger;
 
 public class RomReader {
-    private final byte[] rom;
+    /**
+     * Parser diagnostics (formats detected, tables parsed or rejected) at {@code FINE}, so they
+     * are off unless a caller such as {@code BatchScan --verbose} turns them on.
+     */
+    static final Logger LOG = Logger.getLogger("sm64music");
+
+    private final ByteBuffer rom;     // stored image, read-only, in file byte order
+    private final RomFormat format;
+    private final int swap;           // format.swapMask, cached for the accessors
+    private final int swapEnd;        // end of the last whole swap unit
+    private final int size;
 
     // Music region (ROM) – SM64 (U) [!]
     public static final int MUSIC_START = 0x7B0860;
     public static final int MUSIC_END   = 0x7CC620;
 
+    // Sound banks and the sequence -> bank sets that follow the music region
+    public static final int CTL_START       = 0x57B720;
+    public static final int TBL_START       = 0x593560;
+    public static final int BANK_SETS_START = 0x7CC620;
+
+    /** End of a retail image; {@link SequencePatcher} appends relocated sequences from here on. */
+    public static final int APPEND_START = 0x800000;
+
+    /** Discovered banks below this confidence are not trusted as a fallback. */
+    static final double MIN_BANK_CONFIDENCE = 0.6;
+
+    /** Memory-map the ROM read-only; .n64/.v64 byte order is decoded on access. */
     public RomReader(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            rom = fis.readAllBytes();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long len = ch.size();
+            if (len > Integer.MAX_VALUE) throw new IOException("ROM too large: " + len + " bytes");
+            rom = ch.map(FileChannel.MapMode.READ_ONLY, 0, len);
         }
-        normalizeEndiannessInMemory();
-    }
-
-    /** Auto-fix n64/v64 to big-endian .z64 in memory. */
-    private void normalizeEndiannessInMemory() {
-        if (rom.length < 4) return;
-        int w = ((rom[0] & 0xFF) << 24) | ((rom[1] & 0xFF) << 16) | ((rom[2] & 0xFF) << 8) | (rom[3] & 0xFF);
-        if (w == 0x37804012) { // .n64 (byte-swapped)
-            for (int i = 0; i + 1 < rom.length; i += 2) {
-                byte t = rom[i]; rom[i] = rom[i+1]; rom[i+1] = t;
-            }
-            System.out.println("[ROM] Converted .n64 → .z64 in memory");
-        } else if (w == 0x40123780) { // .v64 (word-swapped)
-            for (int i = 0; i + 3 < rom.length; i += 4) {
-                byte b0 = rom[i], b1 = rom[i+1], b2 = rom[i+2], b3 = rom[i+3];
-                rom[i] = b3; rom[i+1] = b2; rom[i+2] = b1; rom[i+3] = b0;
-            }
-            System.out.println("[ROM] Converted .v64 → .z64 in memory");
+        size = rom.capacity();
+        format = detectFormat();
+        swap = format.swapMask;
+        swapEnd = size & ~swap;
+    }
+
+    /** Wrap an in-memory image without copying it. */
+    public RomReader(byte[] image) {
+        rom = ByteBuffer.wrap(image).asReadOnlyBuffer();
+        size = image.length;
+        format = detectFormat();
+        swap = format.swapMask;
+        swapEnd = size & ~swap;
+    }
+
+    private RomFormat detectFormat() {
+        if (size < 4) return RomFormat.Z64;
+        RomFormat f = RomFormat.detect(rom.getInt(0));
+        if (f != RomFormat.Z64) {
+            LOG.fine(() -> "[ROM] Detected " + f.extension + " byte order, decoding to .z64 on access");
         }
+        return f;
+    }
+
+    public RomFormat format() {
+        return format;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Stored index of big-endian offset {@code off}; a trailing partial unit is left as-is. */
+    private int phys(int off) {
+        return off < swapEnd ? off ^ swap : off;
+    }
+
+    /** The image as stored on disk (not byte-order decoded), read-only. */
+    ByteBuffer stored() {
+        return rom.duplicate();
+    }
+
+    public int u8(int off) {
+        return rom.get(phys(off)) & 0xFF;
     }
 
     private int be16(int off) {
-        return ((rom[off] & 0xFF) << 8) | (rom[off + 1] & 0xFF);
+        if (swap == 0) return rom.getShort(off) & 0xFFFF;
+        return (u8(off) << 8) | u8(off + 1);
     }
 
     private int be32(int off) {
-        return ((rom[off] & 0xFF) << 24) | ((rom[off + 1] & 0xFF) << 16)
-             | ((rom[off + 2] & 0xFF) << 8) | (rom[off + 3] & 0xFF);
+        if (swap == 0) return rom.getInt(off);
+        return (u8(off) << 24) | (u8(off + 1) << 16) | (u8(off + 2) << 8) | u8(off + 3);
     }
 
     public byte[] getBytes(int off, int len) {
-        int a = Math.max(0, off);
-        int b = Math.min(rom.length, off + Math.max(0, len));
-        return Arrays.copyOfRange(rom, a, b);
+        ByteBuffer b = slice(off, len);
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    /**
+     * Read-only big-endian view of a range, clamped to the ROM. For .z64 images this is a
+     * zero-copy slice of the mapping; swapped images get a copy of just that range, decoded
+     * a word at a time by {@link RomFormat#normalize}.
+     */
+    public ByteBuffer slice(int off, int len) {
+        return slice(off, len, null);
+    }
+
+    /**
+     * {@link #slice(int, int)}, decoding a swapped image into {@code buf} when it holds at least
+     * {@code len + 8} bytes, so a scan can walk the image a window at a time without a copy per
+     * window. The result then shares {@code buf} and is only good until the next call with it.
+     */
+    public ByteBuffer slice(int off, int len, ByteBuffer buf) {
+        int a = Math.min(size, Math.max(0, off));
+        int b = Math.max(a, Math.min(size, off + Math.max(0, len)));
+        if (swap == 0) return rom.duplicate().position(a).limit(b).slice();
+
+        // Decode whole swap units around the range; bytes past the last full unit are stored as-is.
+        int lo = a & ~swap;
+        int hi = Math.max(lo, Math.min((b + swap) & ~swap, swapEnd));
+        int n = Math.max(hi, b) - lo;
+        ByteBuffer out = buf != null && buf.capacity() >= n ? buf.clear().limit(n) : ByteBuffer.allocate(n);
+        format.normalize(rom.duplicate().position(lo).limit(hi), out);
+        if (b > hi) out.put(rom.duplicate().position(hi).limit(b));
+        return out.position(a - lo).limit(b - lo).slice().asReadOnlyBuffer();
     }
 
     public boolean looksLikeSm64() {
@@ -55,12 +139,87 @@ public class RomReader {
         return title.contains("SUPER MARIO 64");
     }
 
-    /** Parse the sequence bank header at 0x7B0860. */
+    /**
+     * Parse the sequence bank at 0x7B0860; if there is no valid bank there (moved or enlarged
+     * by a hack), fall back to the most confident bank found by {@link SequenceBankScanner}.
+     * Vanilla-bank sequences must end by {@link #MUSIC_END}, unless they lie wholly past
+     * {@link #APPEND_START}, where {@link SequencePatcher} appends the ones that outgrow the bank.
+     */
     public List<SequenceEntry> parseSequences() {
         List<SequenceEntry> list = new ArrayList<>();
+        parseTable("[SEQ]", "sequences", MUSIC_START, MUSIC_END, APPEND_START,
+                (id, entryOff, start, length) -> list.add(new SequenceEntry(id, entryOff, start, length)));
+        if (!list.isEmpty()) return list;
+
+        List<SequenceBankScanner.Candidate> banks = discoverBanks();
+        if (banks.isEmpty() || banks.get(0).confidence < MIN_BANK_CONFIDENCE) return list;
+        SequenceBankScanner.Candidate best = banks.get(0);
+        LOG.fine(() -> "[SEQ] Using discovered " + best);
+        return parseSequences(best.offset, size);
+    }
+
+    /** Sequence banks found anywhere in the ROM, best first. */
+    public List<SequenceBankScanner.Candidate> discoverBanks() {
+        return SequenceBankScanner.discover(this);
+    }
+
+    /** Parse the sequence bank header at {@code bankStart}; sequences must end by {@code bankEnd}. */
+    public List<SequenceEntry> parseSequences(int bankStart, int bankEnd) {
+        List<SequenceEntry> list = new ArrayList<>();
+        parseTable("[SEQ]", "sequences", bankStart, bankEnd, Integer.MAX_VALUE,
+                (id, entryOff, start, length) -> list.add(new SequenceEntry(id, entryOff, start, length)));
+        return list;
+    }
+
+    /** Parse the vanilla {@code .ctl} or {@code .tbl} table; entries may run to the end of the ROM. */
+    public List<SoundBankEntry> parseSoundBanks(SoundBankEntry.Kind kind) {
+        return parseSoundBanks(kind, kind.vanillaStart, size);
+    }
+
+    /** Parse a {@code .ctl}/{@code .tbl} table at {@code bankStart}; it has the sequence bank's layout. */
+    public List<SoundBankEntry> parseSoundBanks(SoundBankEntry.Kind kind, int bankStart, int bankEnd) {
+        List<SoundBankEntry> list = new ArrayList<>();
+        parseTable("[" + kind + "]", "banks", bankStart, bankEnd, Integer.MAX_VALUE,
+                (id, entryOff, start, length) -> list.add(new SoundBankEntry(kind, id, entryOff, start, length)));
+        return list;
+    }
+
+    /** Bank sets for {@code count} sequences at the vanilla location. */
+    public List<BankSetEntry> parseBankSets(int count) {
+        return parseBankSets(BANK_SETS_START, count);
+    }
 
-        int hdr = MUSIC_START;
-        if (hdr + 4 > rom.length) return list;
+    /** Parse {@code count} bank sets at {@code start}; sets pointing outside the ROM are skipped. */
+    public List<BankSetEntry> parseBankSets(int start, int count) {
+        List<BankSetEntry> list = new ArrayList<>();
+        if (start < 0 || count <= 0 || (long) start + count * 2L > size) return list;
+
+        for (int i = 0; i < count; i++) {
+            int entryOff = start + i * 2;
+            int setOff = start + be16(entryOff);
+            if (setOff >= size) continue;
+            int n = u8(setOff);
+            if (setOff + 1 + n > size) continue;
+            int[] banks = new int[n];
+            for (int j = 0; j < n; j++) banks[j] = u8(setOff + 1 + j);
+            list.add(new BankSetEntry(i, entryOff, setOff, banks));
+        }
+        LOG.fine(() -> "[BANKS] Parsed " + list.size() + " bank sets");
+        return list;
+    }
+
+    /** Receives each in-bounds entry of a bank table, with absolute ROM offsets. */
+    private interface TableEntryHandler {
+        void entry(int id, int entryOff, int start, int length);
+    }
+
+    /**
+     * Walk the {@code u16 revision, u16 count, (u32 offset, u32 length)[count]} table at
+     * {@code hdr} shared by sequences, ctl and tbl. Offsets are relative to {@code hdr}.
+     * Entries must end by {@code bankEnd}, or start at or after {@code appendedFrom}.
+     */
+    private void parseTable(String tag, String what, int hdr, int bankEnd, int appendedFrom, TableEntryHandler out) {
+        if (hdr < 0 || hdr + 4 > size) return;
 
         int revision = be16(hdr + 0);
         int count    = be16(hdr + 2);
@@ -68,29 +227,31 @@ public class RomReader {
         // Basic sanity: count must be > 0 and header + table fits in region
         int tableStart = hdr + 4;
         int tableSize  = count * 8;
-        if (count <= 0 || tableStart + tableSize > MUSIC_END || tableStart + tableSize > rom.length) {
+        if (count <= 0 || tableStart + tableSize > bankEnd || tableStart + tableSize > size) {
             // Fallback: if header looks wrong, bail with empty list
-            System.out.println("[SEQ] Invalid sequence header (rev=" + revision + ", count=" + count + ")");
-            return list;
+            LOG.fine(() -> tag + " Invalid header at 0x" + Integer.toHexString(hdr).toUpperCase()
+                    + " (rev=" + revision + ", count=" + count + ")");
+            return;
         }
 
+        int parsed = 0;
         for (int i = 0; i < count; i++) {
             int entryOff = tableStart + i * 8;
-            int relStart = be32(entryOff + 0); // relative to MUSIC_START
+            int relStart = be32(entryOff + 0); // relative to bank start
             int length   = be32(entryOff + 4);
 
-            // Convert to ROM offsets
-            int seqRom = MUSIC_START + relStart;
-
             // Validate bounds
             if (relStart < 0 || length <= 0) continue;
-            if (seqRom < MUSIC_START || seqRom + length > MUSIC_END) continue;
-            if (seqRom + length > rom.length) continue;
+            long start = (long) hdr + relStart;
+            long end = start + length;
+            if (end > size || (end > bankEnd && start < appendedFrom)) continue;
 
-            list.add(new SequenceEntry(i, entryOff, seqRom, length));
+            // Convert to ROM offsets
+            out.entry(i, entryOff, hdr + relStart, length);
+            parsed++;
         }
 
-        System.out.println("[SEQ] Parsed " + list.size() + " sequences (rev=" + revision + ", count=" + count + ")");
-        return list;
+        int n = parsed;
+        LOG.fine(() -> tag + " Parsed " + n + " " + what + " (rev=" + revision + ", count=" + count + ")");
     }
 }
@@ -0,0 +1,122 @@
+package sm64music;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds sequence banks anywhere in a ROM, for hacks that move or enlarge the bank.
+ *
+ * <p>A bank is a {@code u16 revision, u16 count} header followed by {@code count} pairs of
+ * {@code u32 offset, u32 length} relative to the header. Every word-aligned offset is tested
+ * with a single mask (small revision, count 1..255); the few survivors get their offset table
+ * checked for self-consistency and scored. The ROM is cut into chunks that are scanned in
+ * parallel.
+ */
+public final class SequenceBankScanner {
+    private static final int CHUNK = 1 << 20;
+    private static final int SM64_REVISION = 3;
+    /** Longest header and offset table a candidate can have (count is at most 255). */
+    private static final int MAX_TABLE = 4 + 255 * 8;
+
+    /** A candidate bank. {@code end} is the end of its furthest sequence (ROM offset). */
+    public static class Candidate {
+        public final int offset;
+        public final int revision;
+        public final int count;
+        public final int validEntries;
+        public final int end;
+        public final double confidence;    // 0..1
+
+        Candidate(int offset, int revision, int count, int validEntries, int end, double confidence) {
+            this.offset = offset;
+            this.revision = revision;
+            this.count = count;
+            this.validEntries = validEntries;
+            this.end = end;
+            this.confidence = confidence;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("bank @0x%06X rev=%d count=%d valid=%d end=0x%06X confidence=%.2f",
+                    offset, revision, count, validEntries, end, confidence);
+        }
+    }
+
+    private SequenceBankScanner() { }
+
+    /** All plausible banks in a big-endian image, best first. */
+    public static List<Candidate> discover(ByteBuffer rom) {
+        int size = rom.limit();
+        return discover(size, from -> scanChunk(rom, 0, size, from));
+    }
+
+    /**
+     * All plausible banks in a ROM, best first. Each chunk is read through its own window of
+     * the ROM, extended by the longest offset table, so a swapped image is decoded a chunk at
+     * a time rather than copied whole.
+     */
+    public static List<Candidate> discover(RomReader rom) {
+        int size = rom.size();
+        return discover(size, from -> scanChunk(rom.slice(from, CHUNK + MAX_TABLE), from, size, from));
+    }
+
+    private static List<Candidate> discover(int size, IntFunction<List<Candidate>> chunk) {
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> chunk.apply(c * CHUNK))
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingDouble((Candidate k) -> -k.confidence)
+                        .thenComparingInt(k -> k.offset))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Banks with headers in the chunk at {@code from}. {@code buf} holds the ROM from
+     * {@code base} on, at least up to the end of any table a header there can have.
+     */
+    private static List<Candidate> scanChunk(ByteBuffer buf, int base, int size, int from) {
+        List<Candidate> out = new ArrayList<>();
+        int limit = Math.min(from + CHUNK, size - 3);
+        for (int h = (from + 3) & ~3; h < limit; h += 4) {
+            int w = buf.getInt(h - base);
+            // revision < 16 and count 1..255
+            if ((w & 0xFFF0FF00) != 0 || (w & 0xFF) == 0) continue;
+            Candidate c = validate(buf, base, size, h, w >>> 16, w & 0xFFFF);
+            if (c != null) out.add(c);
+        }
+        return out;
+    }
+
+    /** Check the offset table at ROM offset {@code h} of a {@code size}-byte ROM; null if it cannot be a bank. */
+    static Candidate validate(ByteBuffer buf, int base, int size, int h, int revision, int count) {
+        int header = 4 + count * 8;
+        if ((long) h + header > size) return null;
+
+        int valid = 0, ordered = 0, end = 0;
+        int prevEnd = -1;
+        boolean firstAligned = false;
+        for (int i = 0; i < count; i++) {
+            int off = buf.getInt(h - base + 4 + i * 8);
+            int len = buf.getInt(h - base + 8 + i * 8);
+            if (off < header || len <= 0 || (long) h + off + len > size) continue;
+            if (valid == 0) firstAligned = off == ((header + 15) & ~15);
+            valid++;
+            if (off >= prevEnd) ordered++;
+            prevEnd = off + len;
+            end = Math.max(end, h + off + len);
+        }
+        if (valid < 2 || valid * 4 < count * 3) return null;
+
+        double confidence = 0.5 * valid / count
+                + 0.2 * ordered / valid
+                + (firstAligned ? 0.2 : 0)
+                + (revision == SM64_REVISION ? 0.1 : 0);
+        return new Candidate(h, revision, count, valid, end, confidence);
+    }
+}
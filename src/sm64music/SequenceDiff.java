@@ -0,0 +1,100 @@
+package sm64music;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the sequence banks of two ROM revisions.
+ *
+ * <p>Sequences are matched by bank index. Each pair is hashed with {@link RomHash}; equal hashes
+ * and lengths mean the data is unchanged (reported as MOVED if the offset differs), and only
+ * pairs whose hashes differ are byte-compared to locate the first changed byte.
+ *
+ * <pre>
+ * java -cp ... sm64music.SequenceDiff old.z64 new.z64
+ * </pre>
+ */
+public class SequenceDiff {
+    public enum Kind { ADDED, REMOVED, MOVED, MODIFIED }
+
+    public static class Change {
+        public final Kind kind;
+        public final SequenceEntry before;  // null for ADDED
+        public final SequenceEntry after;   // null for REMOVED
+        public final int firstDiff;         // first differing byte within the sequence, -1 if n/a
+
+        Change(Kind kind, SequenceEntry before, SequenceEntry after, int firstDiff) {
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+            this.firstDiff = firstDiff;
+        }
+
+        @Override
+        public String toString() {
+            SequenceEntry any = after != null ? after : before;
+            StringBuilder sb = new StringBuilder(String.format("%-8s [%02X] ", kind, any.id));
+            if (before != null) sb.append(String.format("0x%06X (len=%d)", before.seqOffset, before.length));
+            if (before != null && after != null) sb.append(" -> ");
+            if (after != null) sb.append(String.format("0x%06X (len=%d)", after.seqOffset, after.length));
+            if (firstDiff >= 0) sb.append(String.format(", first diff +0x%X", firstDiff));
+            return sb.toString();
+        }
+    }
+
+    public static List<Change> compare(RomReader a, RomReader b) {
+        return compare(a, a.parseSequences(), b, b.parseSequences());
+    }
+
+    /** Changes from {@code a} to {@code b}, ordered by bank index; unchanged sequences are omitted. */
+    public static List<Change> compare(RomReader a, List<SequenceEntry> seqA, RomReader b, List<SequenceEntry> seqB) {
+        SequenceEntry[] byIdA = byId(seqA);
+        SequenceEntry[] byIdB = byId(seqB);
+        List<Change> changes = new ArrayList<>();
+        for (int id = 0; id < Math.max(byIdA.length, byIdB.length); id++) {
+            SequenceEntry x = id < byIdA.length ? byIdA[id] : null;
+            SequenceEntry y = id < byIdB.length ? byIdB[id] : null;
+            if (x == null && y == null) continue;
+            if (x == null) {
+                changes.add(new Change(Kind.ADDED, null, y, -1));
+            } else if (y == null) {
+                changes.add(new Change(Kind.REMOVED, x, null, -1));
+            } else {
+                ByteBuffer dx = a.slice(x.seqOffset, x.length);
+                ByteBuffer dy = b.slice(y.seqOffset, y.length);
+                boolean same = x.length == y.length
+                        && RomHash.hash(dx, 0, dx.limit(), 0) == RomHash.hash(dy, 0, dy.limit(), 0);
+                if (!same) {
+                    int at = dx.mismatch(dy);
+                    if (at >= 0) {
+                        changes.add(new Change(Kind.MODIFIED, x, y, at));
+                        continue;
+                    }
+                }
+                if (x.seqOffset != y.seqOffset) changes.add(new Change(Kind.MOVED, x, y, -1));
+            }
+        }
+        return changes;
+    }
+
+    private static SequenceEntry[] byId(List<SequenceEntry> list) {
+        int max = -1;
+        for (SequenceEntry se : list) max = Math.max(max, se.id);
+        SequenceEntry[] out = new SequenceEntry[max + 1];
+        for (SequenceEntry se : list) out[se.id] = se;
+        return out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: SequenceDiff <old-rom> <new-rom>");
+            System.exit(2);
+        }
+        long t0 = System.nanoTime();
+        List<Change> changes = compare(new RomReader(new File(args[0])), new RomReader(new File(args[1])));
+        for (Change c : changes) System.out.println(c);
+        System.out.printf("[DIFF] %d change(s) in %d ms%n", changes.size(), (System.nanoTime() - t0) / 1_000_000);
+    }
+}
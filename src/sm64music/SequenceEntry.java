@@ -38,6 +38,11 @@ public class SequenceEntry {
         this.length = length;
     }
 
+    /** ROM offset of the bank header this entry was read from. */
+    public int bankOffset() {
+        return tableOffset - 4 - id * 8;
+    }
+
     @Override
     public String toString() {
         String name = SONG_NAMES.getOrDefault(id, "Unknown");
@@ -0,0 +1,122 @@
+package sm64music;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes sequence data to disk as raw {@code .m64} or as a 16-bytes-per-line hex dump.
+ *
+ * <p>Everything goes through NIO channels. Raw export hands the ROM slice straight to the
+ * channel; the hex dump is formatted by table lookup into a reusable buffer, so neither path
+ * allocates per byte or per line.
+ */
+public final class SequenceExporter {
+    public enum Format {
+        RAW(".m64"), HEX(".txt");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+    private static final int BYTES_PER_LINE = 16;
+
+    /** Progress of a bulk export; {@link #isCancelled} is polled between sequences. */
+    public interface Progress {
+        void exported(int done, int total);
+        default boolean isCancelled() { return false; }
+    }
+
+    private static final Progress NO_PROGRESS = (done, total) -> { };
+
+    private SequenceExporter() { }
+
+    /** {@code seq_XX_0xOOOOOO.ext}, the name used for single and bulk exports alike. */
+    public static String fileName(SequenceEntry se, Format f) {
+        return String.format("seq_%02X_0x%06X", se.id, se.seqOffset) + f.extension;
+    }
+
+    public static void write(RomReader rom, SequenceEntry se, Format f, Path out) throws IOException {
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(rom, se, f, ch);
+        }
+    }
+
+    public static void write(RomReader rom, SequenceEntry se, Format f, WritableByteChannel ch) throws IOException {
+        ByteBuffer data = rom.slice(se.seqOffset, se.length);
+        if (f == Format.RAW) {
+            while (data.hasRemaining()) ch.write(data);
+        } else {
+            writeHexDump(data, se.seqOffset, ch);
+        }
+    }
+
+    /** Write all sequences into one zip archive; returns the number of entries written. */
+    public static int writeArchive(RomReader rom, List<SequenceEntry> entries, Format f, Path zip) throws IOException {
+        return writeArchive(rom, entries, f, zip, NO_PROGRESS);
+    }
+
+    /** As above; a cancelled export stops early and leaves a valid archive of what was written. */
+    public static int writeArchive(RomReader rom, List<SequenceEntry> entries, Format f, Path zip,
+                                   Progress progress) throws IOException {
+        try (FileChannel ch = FileChannel.open(zip, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16))) {
+            WritableByteChannel out = Channels.newChannel(zos);   // never closed; zos owns the stream
+            int done = 0;
+            for (SequenceEntry se : entries) {
+                if (progress.isCancelled()) break;
+                zos.putNextEntry(new ZipEntry(fileName(se, f)));
+                write(rom, se, f, out);
+                zos.closeEntry();
+                progress.exported(++done, entries.size());
+            }
+            return done;
+        }
+    }
+
+    /** {@code 0xOOOOOO: XX XX ... XX} lines, 16 bytes each; offsets widen to 8 digits past 16 MB. */
+    public static void writeHexDump(ByteBuffer data, int baseOffset, WritableByteChannel ch) throws IOException {
+        int len = data.remaining();
+        int digits = (long) baseOffset + len > 0xFFFFFF ? 8 : 6;
+        int lineLen = 2 + digits + 1 + BYTES_PER_LINE * 3;   // "0x", offset, ':', " XX" * 16, '\n'
+        ByteBuffer line = ByteBuffer.allocate(256 * lineLen);
+
+        int start = data.position();
+        for (int i = 0; i < len; i += BYTES_PER_LINE) {
+            if (line.remaining() < lineLen) flush(line, ch);
+            int off = baseOffset + i;
+            line.put((byte) '0').put((byte) 'x');
+            for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+                line.put(HEX_DIGITS[(off >>> shift) & 0xF]);
+            }
+            line.put((byte) ':');
+            int n = Math.min(BYTES_PER_LINE, len - i);
+            for (int j = 0; j < n; j++) {
+                int b = data.get(start + i + j) & 0xFF;
+                line.put((byte) ' ').put(HEX_DIGITS[b >>> 4]).put(HEX_DIGITS[b & 0xF]);
+            }
+            line.put((byte) '\n');
+        }
+        flush(line, ch);
+    }
+
+    private static void flush(ByteBuffer buf, WritableByteChannel ch) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+}
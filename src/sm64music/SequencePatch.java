@@ -0,0 +1,273 @@
+package sm64music;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The bytes a {@link SequencePatcher} run changes, ready to be applied in place or written as
+ * an IPS or BPS patch.
+ *
+ * <p>Edits are kept in .z64 order and converted to the ROM's stored byte order (whole swap
+ * units, filled in from the original) only when applied or written, so a patch made from a
+ * .n64 file applies to that .n64 file. Nothing here copies or rewrites the whole image:
+ * in-place application maps just the edited span read-write, and BPS checksums stream over
+ * the original mapping.
+ */
+public class SequencePatch {
+    /** Edits closer than this are merged, filling the gap from the original ROM. */
+    private static final int MERGE_GAP = 8;
+    private static final int IPS_MAX_OFFSET = 0xFFFFFF;
+    private static final int IPS_MAX_RECORD = 0xFFFF;
+    private static final int IPS_EOF = 0x454F46;   // "EOF" - a record cannot start here
+
+    /** Bytes to write at a ROM offset. */
+    public static class Edit {
+        public final int offset;
+        final byte[] data;
+
+        Edit(int offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+
+        public int length() {
+            return data.length;
+        }
+
+        public byte[] data() {
+            return data.clone();
+        }
+
+        int end() {
+            return offset + data.length;
+        }
+    }
+
+    private final RomReader rom;
+    private final List<Edit> edits;
+    private final int targetSize;
+    private final List<SequenceEntry> sequences;
+
+    SequencePatch(RomReader rom, List<Edit> edits, int targetSize, List<SequenceEntry> sequences) {
+        this.rom = rom;
+        this.edits = Collections.unmodifiableList(coalesce(rom, edits));
+        this.targetSize = targetSize;
+        this.sequences = Collections.unmodifiableList(sequences);
+    }
+
+    /** Merged, non-overlapping edits in .z64 order, ascending. */
+    public List<Edit> edits() {
+        return edits;
+    }
+
+    /** The bank's table after the patch. */
+    public List<SequenceEntry> sequences() {
+        return sequences;
+    }
+
+    public int targetSize() {
+        return targetSize;
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /** Sort and merge edits that overlap or nearly touch; later edits win where they overlap. */
+    private static List<Edit> coalesce(RomReader rom, List<Edit> in) {
+        List<Edit> sorted = new ArrayList<>(in);
+        sorted.sort(Comparator.comparingInt(e -> e.offset));
+        List<Edit> out = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.size()) {
+            int lo = sorted.get(i).offset, hi = sorted.get(i).end();
+            int j = i + 1;
+            while (j < sorted.size() && sorted.get(j).offset <= hi + MERGE_GAP) hi = Math.max(hi, sorted.get(j++).end());
+            if (j == i + 1) {
+                out.add(sorted.get(i));
+            } else {
+                byte[] merged = new byte[hi - lo];
+                byte[] orig = rom.getBytes(lo, hi - lo);
+                System.arraycopy(orig, 0, merged, 0, orig.length);
+                for (int k = i; k < j; k++) {
+                    Edit e = sorted.get(k);
+                    System.arraycopy(e.data, 0, merged, e.offset - lo, e.data.length);
+                }
+                out.add(new Edit(lo, merged));
+            }
+            i = j;
+        }
+        return out;
+    }
+
+    /** The edits in the ROM's stored byte order, widened to whole swap units. */
+    List<Edit> storedEdits() {
+        RomFormat format = rom.format();
+        int swap = format.swapMask;
+        if (swap == 0) return edits;
+        List<Edit> out = new ArrayList<>(edits.size());
+        for (Edit e : edits) {
+            int lo = e.offset & ~swap;
+            int hi = (e.end() + swap) & ~swap;
+            byte[] unit = new byte[hi - lo];
+            byte[] orig = rom.getBytes(lo, hi - lo);
+            System.arraycopy(orig, 0, unit, 0, orig.length);
+            System.arraycopy(e.data, 0, unit, e.offset - lo, e.data.length);
+            format.normalize(unit);   // pair and quad swaps are their own inverse
+            out.add(new Edit(lo, unit));
+        }
+        return out;
+    }
+
+    /**
+     * Write the patch into {@code romFile}, which must be the file the {@link RomReader} was
+     * opened on. Only the span between the first and last edit is mapped; appended sequences
+     * grow the file.
+     */
+    public void applyTo(Path romFile) throws IOException {
+        if (edits.isEmpty()) return;
+        List<Edit> stored = storedEdits();
+        try (FileChannel ch = FileChannel.open(romFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (ch.size() != rom.size()) {
+                throw new IOException("ROM size changed (" + ch.size() + " != " + rom.size() + "), rebuild the patch");
+            }
+            int lo = stored.get(0).offset;
+            int hi = lo;
+            for (Edit e : stored) hi = Math.max(hi, e.end());
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, lo, hi - lo);
+            for (Edit e : stored) {
+                map.position(e.offset - lo);
+                map.put(e.data);
+            }
+            map.force();
+        }
+    }
+
+    public void applyTo(java.io.File romFile) throws IOException {
+        applyTo(romFile.toPath());
+    }
+
+    /** IPS patch against the stored file. IPS offsets are 24-bit, so edits must end by 16 MB. */
+    public void writeIps(Path out) throws IOException {
+        List<Edit> stored = storedEdits();
+        for (Edit e : stored) {
+            if (e.end() - 1 > IPS_MAX_OFFSET) {
+                throw new IOException(String.format("Edit at 0x%06X is past IPS's 16 MB limit; use BPS", e.offset));
+            }
+        }
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out))) {
+            os.write(new byte[] { 'P', 'A', 'T', 'C', 'H' });
+            for (Edit e : stored) {
+                int pos = e.offset;
+                while (pos < e.end()) {
+                    int start = pos;
+                    int prefix = -1;
+                    if (start == IPS_EOF) {
+                        // Start one byte early so the offset does not read as the footer.
+                        start--;
+                        prefix = storedTargetByte(e, start);
+                    }
+                    int len = Math.min(IPS_MAX_RECORD - (prefix >= 0 ? 1 : 0), e.end() - pos);
+                    os.write(start >>> 16);
+                    os.write(start >>> 8);
+                    os.write(start);
+                    int recLen = len + (prefix >= 0 ? 1 : 0);
+                    os.write(recLen >>> 8);
+                    os.write(recLen);
+                    if (prefix >= 0) os.write(prefix);
+                    os.write(e.data, pos - e.offset, len);
+                    pos += len;
+                }
+            }
+            os.write(new byte[] { 'E', 'O', 'F' });
+        }
+    }
+
+    /** Stored byte at {@code off} once {@code e} is applied (e's own data, or the original). */
+    private int storedTargetByte(Edit e, int off) {
+        if (off >= e.offset && off < e.end()) return e.data[off - e.offset] & 0xFF;
+        return rom.stored().get(off) & 0xFF;
+    }
+
+    /**
+     * BPS patch against the stored file: unchanged spans become SourceRead actions and edits
+     * TargetRead actions, followed by CRC32s of source, target and patch.
+     */
+    public void writeBps(Path out) throws IOException {
+        List<Edit> stored = storedEdits();
+        ByteBuffer source = rom.stored();
+
+        CRC32 sourceCrc = new CRC32();
+        sourceCrc.update(source.duplicate());
+        CRC32 targetCrc = new CRC32();
+
+        CRC32 patchCrc = new CRC32();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(out), 1 << 16);
+             CheckedOutputStream os = new CheckedOutputStream(file, patchCrc)) {
+            os.write(new byte[] { 'B', 'P', 'S', '1' });
+            writeNumber(os, rom.size());
+            writeNumber(os, targetSize);
+            writeNumber(os, 0);   // no metadata
+
+            int pos = 0;
+            for (Edit e : stored) {
+                if (e.offset > pos) {
+                    writeNumber(os, (long) (e.offset - pos - 1) << 2);   // SourceRead
+                    targetCrc.update(source.duplicate().position(pos).limit(e.offset));
+                }
+                writeNumber(os, ((long) (e.data.length - 1) << 2) | 1); // TargetRead
+                os.write(e.data);
+                targetCrc.update(e.data);
+                pos = e.end();
+            }
+            if (pos < targetSize) {
+                writeNumber(os, (long) (targetSize - pos - 1) << 2);
+                targetCrc.update(source.duplicate().position(pos).limit(targetSize));
+            }
+            writeInt32Le(os, sourceCrc.getValue());
+            writeInt32Le(os, targetCrc.getValue());
+            writeInt32Le(file, patchCrc.getValue());   // covers everything before it
+        }
+    }
+
+    /** BPS variable-length number: 7 bits per byte, high bit ends it, with the beat "-1" bias. */
+    private static void writeNumber(OutputStream os, long n) throws IOException {
+        while (true) {
+            int x = (int) (n & 0x7F);
+            n >>>= 7;
+            if (n == 0) {
+                os.write(0x80 | x);
+                return;
+            }
+            os.write(x);
+            n--;
+        }
+    }
+
+    private static void writeInt32Le(OutputStream os, long v) throws IOException {
+        os.write((int) v);
+        os.write((int) (v >>> 8));
+        os.write((int) (v >>> 16));
+        os.write((int) (v >>> 24));
+    }
+
+    @Override
+    public String toString() {
+        long bytes = 0;
+        for (Edit e : edits) bytes += e.data.length;
+        return String.format("%d edit(s), %d bytes changed, target size 0x%X", edits.size(), bytes, targetSize);
+    }
+}
@@ -0,0 +1,254 @@
+package sm64music;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Plans the replacement of sequences in a bank and produces a {@link SequencePatch}.
+ *
+ * <p>Only the sequences that actually change are placed, and only their data and their 8-byte
+ * table entries end up in the patch. A replacement stays at its old offset if it fits there
+ * (including any padding or freed space after it); otherwise it moves to the first aligned gap
+ * in the bank's region that is big enough, and failing that it is appended past the end of
+ * the ROM (at {@link RomReader#APPEND_START} at the earliest), growing the image. Offsets in
+ * the table stay relative to the bank header, so the bank can live anywhere
+ * {@link RomReader#parseSequences()} finds it.
+ *
+ * <p>Free space is only ever taken from the bank's own region, {@code [bank, regionEnd)},
+ * and from the old bytes of the sequences being replaced. Whatever lies between the region
+ * and sequences outside it (appended earlier, or placed there by a hack), such as the bank
+ * set table after the vanilla bank, is never treated as free.
+ */
+public class SequencePatcher {
+    /** Alignment of relocated and appended sequences, as the game's own bank uses. */
+    public static final int ALIGN = 16;
+
+    private final RomReader rom;
+    private final int bank;
+    private final int regionEnd;
+    private final SequenceEntry[] byId;
+    private final Map<Integer, byte[]> replacements = new TreeMap<>();
+
+    /**
+     * Patch the bank that {@code entries} (from {@link RomReader#parseSequences()}) came from.
+     * The vanilla bank's region ends at {@link RomReader#MUSIC_END}; a bank elsewhere is taken
+     * to end with its furthest sequence below {@link RomReader#APPEND_START}, or, if it lies
+     * past that itself, with its offset table.
+     */
+    public SequencePatcher(RomReader rom, List<SequenceEntry> entries) {
+        this(rom, entries, -1);
+    }
+
+    /** As above, with the bank's region (for a moved bank whose extent is known) ending at {@code regionEnd}. */
+    public SequencePatcher(RomReader rom, List<SequenceEntry> entries, int regionEnd) {
+        if (entries.isEmpty()) throw new IllegalArgumentException("No sequences to patch");
+        this.rom = rom;
+        this.bank = entries.get(0).bankOffset();
+        int max = 0;
+        for (SequenceEntry se : entries) {
+            if (se.bankOffset() != bank) throw new IllegalArgumentException("Entries come from more than one bank");
+            max = Math.max(max, se.id);
+        }
+        byId = new SequenceEntry[max + 1];
+        for (SequenceEntry se : entries) byId[se.id] = se;
+        this.regionEnd = Math.min(rom.size(), regionEnd >= 0 ? regionEnd : defaultRegionEnd());
+    }
+
+    private int defaultRegionEnd() {
+        if (bank == RomReader.MUSIC_START) return RomReader.MUSIC_END;
+        int end = align(bank + 4 + byId.length * 8);
+        if (bank >= RomReader.APPEND_START) return end;
+        for (SequenceEntry se : byId) {
+            if (se != null && se.seqOffset < RomReader.APPEND_START) end = Math.max(end, align(se.seqOffset + se.length));
+        }
+        return Math.min(end, RomReader.APPEND_START);
+    }
+
+    /** Replace sequence {@code id} with {@code data}; the last call for an id wins. */
+    public SequencePatcher replace(int id, byte[] data) {
+        if (id < 0 || id >= byId.length || byId[id] == null) {
+            throw new IllegalArgumentException("No sequence " + id + " in the bank");
+        }
+        if (data.length == 0) throw new IllegalArgumentException("Sequence " + id + " is empty");
+        replacements.put(id, data.clone());
+        return this;
+    }
+
+    /** Place every replacement and collect the bytes that change. */
+    public SequencePatch build() {
+        List<SequencePatch.Edit> edits = new ArrayList<>();
+        SequenceEntry[] table = byId.clone();
+
+        // Free space: the bank's region plus the old bytes of changed sequences outside it,
+        // minus the header and every sequence that is kept.
+        List<int[]> used = new ArrayList<>();
+        used.add(new int[] { bank, bank + 4 + byId.length * 8 });
+        for (SequenceEntry se : byId) {
+            if (se != null && !isChanged(se)) used.add(new int[] { se.seqOffset, se.seqOffset + se.length });
+        }
+        List<int[]> gaps = gaps(used, bank, regionEnd);
+        for (SequenceEntry se : byId) {
+            if (se != null && isChanged(se) && se.seqOffset + se.length > regionEnd) {
+                gaps.addAll(gaps(used, Math.max(se.seqOffset, regionEnd), se.seqOffset + se.length));
+            }
+        }
+        gaps = merge(gaps);
+
+        int romSize = rom.size();
+        int appendAt = Math.max(romSize, RomReader.APPEND_START);
+        ByteArrayOutputStream appended = new ByteArrayOutputStream();
+        for (Map.Entry<Integer, byte[]> r : replacements.entrySet()) {
+            SequenceEntry old = byId[r.getKey()];
+            byte[] data = r.getValue();
+            if (!isChanged(old)) continue;
+
+            int at = allocate(gaps, old.seqOffset, data.length);
+            if (at < 0) {
+                // Nothing in the bank fits: append, keeping the appended area aligned.
+                int pos = align(Math.max(appendAt, romSize + appended.size()));
+                while (romSize + appended.size() < pos) appended.write(0);
+                at = pos;
+                appended.write(data, 0, data.length);
+            } else {
+                edits.add(new SequencePatch.Edit(at, data));
+            }
+            if ((long) at - bank > Integer.MAX_VALUE) throw new IllegalStateException("Sequence offset overflow");
+            table[old.id] = new SequenceEntry(old.id, old.tableOffset, at, data.length);
+            if (at != old.seqOffset || data.length != old.length) {
+                edits.add(new SequencePatch.Edit(old.tableOffset,
+                        ByteBuffer.allocate(8).putInt(at - bank).putInt(data.length).array()));
+            }
+        }
+
+        int targetSize = romSize;
+        if (appended.size() > 0) {
+            while (appended.size() % ALIGN != 0) appended.write(0);
+            edits.add(new SequencePatch.Edit(romSize, appended.toByteArray()));
+            targetSize = romSize + appended.size();
+        }
+
+        List<SequenceEntry> sequences = new ArrayList<>();
+        for (SequenceEntry se : table) if (se != null) sequences.add(se);
+        return new SequencePatch(rom, edits, targetSize, sequences);
+    }
+
+    /** True if {@code se} has a replacement whose bytes differ from what is in the ROM. */
+    private boolean isChanged(SequenceEntry se) {
+        byte[] data = replacements.get(se.id);
+        return data != null && (data.length != se.length
+                || !rom.slice(se.seqOffset, se.length).equals(ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * Take {@code len} bytes from {@code gaps}: at {@code preferred} if a gap starts there (the
+     * sequence keeps its offset), else first fit at an aligned start. Returns -1 if none fits.
+     */
+    private static int allocate(List<int[]> gaps, int preferred, int len) {
+        for (int[] g : gaps) {
+            if (g[0] <= preferred && (long) preferred + len <= g[1]) return take(gaps, g, preferred, len);
+        }
+        for (int[] g : gaps) {
+            int start = align(g[0]);
+            if ((long) start + len <= g[1]) return take(gaps, g, start, len);
+        }
+        return -1;
+    }
+
+    private static int take(List<int[]> gaps, int[] g, int start, int len) {
+        int i = gaps.indexOf(g);
+        gaps.remove(i);
+        if (start + len < g[1]) gaps.add(i, new int[] { start + len, g[1] });
+        if (g[0] < start) gaps.add(i, new int[] { g[0], start });
+        return start;
+    }
+
+    /** Complement of the {@code used} ranges within {@code [from, to)}, ascending. */
+    private static List<int[]> gaps(List<int[]> used, int from, int to) {
+        used.sort(Comparator.comparingInt(r -> r[0]));
+        List<int[]> gaps = new ArrayList<>();
+        int pos = from;
+        for (int[] r : used) {
+            if (r[0] > pos) gaps.add(new int[] { pos, Math.min(r[0], to) });
+            pos = Math.max(pos, r[1]);
+        }
+        if (pos < to) gaps.add(new int[] { pos, to });
+        gaps.removeIf(g -> g[1] <= g[0]);
+        return gaps;
+    }
+
+    /** Sort {@code gaps} and join the ones that touch or overlap. */
+    private static List<int[]> merge(List<int[]> gaps) {
+        gaps.sort(Comparator.comparingInt(g -> g[0]));
+        List<int[]> out = new ArrayList<>();
+        for (int[] g : gaps) {
+            int[] last = out.isEmpty() ? null : out.get(out.size() - 1);
+            if (last != null && g[0] <= last[1]) last[1] = Math.max(last[1], g[1]);
+            else out.add(new int[] { g[0], g[1] });
+        }
+        return out;
+    }
+
+    private static int align(int off) {
+        return (off + ALIGN - 1) & -ALIGN;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: SequencePatcher <rom> <id>=<file.m64>... (--in-place | --ips OUT | --bps OUT)");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) usage();
+        File romFile = new File(args[0]);
+        Map<Integer, File> inputs = new TreeMap<>();
+        String mode = null;
+        File out = null;
+        for (int i = 1; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--in-place")) {
+                mode = a;
+            } else if (a.equals("--ips") || a.equals("--bps")) {
+                if (++i >= args.length) usage();
+                mode = a;
+                out = new File(args[i]);
+            } else if (a.indexOf('=') > 0) {
+                String id = a.substring(0, a.indexOf('='));
+                inputs.put(Integer.decode(id), new File(a.substring(a.indexOf('=') + 1)));
+            } else {
+                usage();
+            }
+        }
+        if (mode == null || inputs.isEmpty()) usage();
+
+        RomReader rom = new RomReader(romFile);
+        SequencePatcher patcher = new SequencePatcher(rom, rom.parseSequences());
+        for (Map.Entry<Integer, File> e : inputs.entrySet()) {
+            patcher.replace(e.getKey(), Files.readAllBytes(e.getValue().toPath()));
+        }
+        SequencePatch patch = patcher.build();
+        System.out.println("[PATCH] " + patch);
+
+        switch (mode) {
+            case "--in-place":
+                patch.applyTo(romFile);
+                System.out.println("[PATCH] Applied to " + romFile);
+                break;
+            case "--ips":
+                patch.writeIps(out.toPath());
+                System.out.println("[PATCH] Wrote " + out + " (" + out.length() + " bytes)");
+                break;
+            default:
+                patch.writeBps(out.toPath());
+                System.out.println("[PATCH] Wrote " + out + " (" + out.length() + " bytes)");
+                break;
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package sm64music;
 
+import sm64ui.HexViewer;
+
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Sm64MusicExtractor extends JFrame {
     private RomReader rom;
+    private final RomIndexCache cache = RomIndexCache.openDefault();
     private final DefaultListModel<SequenceEntry> listModel = new DefaultListModel<>();
     private final JList<SequenceEntry> seqList = new JList<>(listModel);
     private final JLabel status = new JLabel("Ready");
+    private final JProgressBar progress = new JProgressBar(0, 100);
+    private final JButton cancelBtn = new JButton("Cancel");
+    private final List<JButton> actions = new ArrayList<>();
+    private Task<?, ?> task;
+
+    /** List rows added per model update while a ROM loads. */
+    private static final int LIST_BATCH = 32;
 
     public Sm64MusicExtractor() {
         super("SM64 Music Extractor");
@@ -21,24 +33,44 @@ public class Sm64MusicExtractor extends JFrame {
         setSize(800, 500);
 
         JButton openBtn = new JButton("Open ROM");
-        JButton exportBtn = new JButton("Export Selected to TXT");
+        JButton exportBtn = new JButton("Export Selected…");
         JButton exportAllBtn = new JButton("Export ALL Sequences…");
+        JButton exportZipBtn = new JButton("Export ALL to ZIP…");
         JButton exportRangesBtn = new JButton("Export ALL Ranges…");
 
         openBtn.addActionListener(e -> openRom());
         exportBtn.addActionListener(e -> exportSelected());
         exportAllBtn.addActionListener(e -> exportAllSequences());
+        exportZipBtn.addActionListener(e -> exportAllToArchive());
         exportRangesBtn.addActionListener(e -> exportAllRanges());
 
         JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
         top.add(openBtn);
         top.add(exportBtn);
         top.add(exportAllBtn);
+        top.add(exportZipBtn);
         top.add(exportRangesBtn);
+        Collections.addAll(actions, openBtn, exportBtn, exportAllBtn, exportZipBtn, exportRangesBtn);
+
+        progress.setStringPainted(true);
+        progress.setVisible(false);
+        cancelBtn.setEnabled(false);
+        cancelBtn.addActionListener(e -> {
+            if (task == null) return;
+            task.cancel(false);
+            cancelBtn.setEnabled(false);
+            status.setText("Cancelling…");
+        });
+        JPanel bottom = new JPanel(new BorderLayout(8, 0));
+        JPanel busy = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        busy.add(progress);
+        busy.add(cancelBtn);
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(busy, BorderLayout.EAST);
 
         add(top, BorderLayout.NORTH);
         add(new JScrollPane(seqList), BorderLayout.CENTER);
-        add(status, BorderLayout.SOUTH);
+        add(bottom, BorderLayout.SOUTH);
 
         // Double-click viewer
         seqList.addMouseListener(new java.awt.event.MouseAdapter() {
@@ -54,7 +86,7 @@ public class Sm64MusicExtractor extends JFrame {
         // Right-click menu for ranges
         JPopupMenu popup = new JPopupMenu();
         JMenuItem copyRangeItem = new JMenuItem("Copy Range(s) to Clipboard");
-        JMenuItem saveRangeItem = new JMenuItem("Save Range(s) to TXT");
+        JMenuItem saveRangeItem = new JMenuItem("Save Range(s) to File…");
         popup.add(copyRangeItem);
         popup.add(saveRangeItem);
         seqList.setComponentPopupMenu(popup);
@@ -63,42 +95,154 @@ public class Sm64MusicExtractor extends JFrame {
         saveRangeItem.addActionListener(e -> saveSelectedRanges());
     }
 
+    /**
+     * Background work with a progress bar and a Cancel button; one runs at a time and the
+     * action buttons are disabled meanwhile. Cancellation is cooperative: {@link #work} polls
+     * {@link #isCancelled()} between steps.
+     *
+     * <p>SwingWorker's {@code done()} fires as soon as {@code cancel()} is called, while the
+     * work may still be writing files or loading the ROM. So the outcome is handed to the EDT
+     * from {@link #doInBackground} once {@link #work} has returned, and only then are the
+     * actions re-enabled.
+     */
+    private abstract class Task<T, V> extends SwingWorker<T, V> {
+        void start(String what) {
+            status.setText(what);
+            progress.setValue(0);
+            progress.setVisible(true);
+            cancelBtn.setEnabled(true);
+            for (JButton b : actions) b.setEnabled(false);
+            addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) progress.setValue((Integer) e.getNewValue());
+            });
+            task = this;
+            execute();
+        }
+
+        /** The work itself, on the worker thread. */
+        abstract T work() throws Exception;
+
+        @Override
+        protected final T doInBackground() {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = work();
+            } catch (Throwable t) {
+                error = t;
+            }
+            T r = result;
+            Throwable e = error;
+            SwingUtilities.invokeLater(() -> finished(r, e));
+            return result;
+        }
+
+        private void finished(T result, Throwable error) {
+            task = null;
+            progress.setVisible(false);
+            cancelBtn.setEnabled(false);
+            for (JButton b : actions) b.setEnabled(true);
+            if (isCancelled()) {
+                cancelled();
+            } else if (error != null) {
+                failed(error);
+            } else {
+                succeeded(result);
+            }
+        }
+
+        abstract void succeeded(T result);
+
+        void cancelled() {
+            status.setText("Cancelled");
+        }
+
+        void failed(Throwable t) {
+            JOptionPane.showMessageDialog(Sm64MusicExtractor.this, "Failed export: " + t.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            status.setText("Export error");
+        }
+    }
+
     private void openRom() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(new FileNameExtensionFilter("N64 ROMs", "z64", "n64", "v64"));
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File romFile = chooser.getSelectedFile();
-            try {
-                rom = new RomReader(romFile);
-
-                if (!rom.looksLikeSm64()) {
-                    JOptionPane.showMessageDialog(this,
-                            "This does not look like SM64 (title not found).",
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    rom = null;
-                    listModel.clear();
-                    status.setText("No ROM loaded");
-                    return;
-                }
+            rom = null;
+            listModel.clear();
+            new LoadTask(romFile).start("Loading " + romFile.getName() + "…");
+        }
+    }
 
-                List<SequenceEntry> entries = rom.parseSequences();
-                listModel.clear();
-                if (entries.isEmpty()) {
-                    JOptionPane.showMessageDialog(this,
-                            "No sequences found. (Sequence bank header not recognized.)",
-                            "Warning", JOptionPane.WARNING_MESSAGE);
-                    status.setText("0 sequences");
-                } else {
-                    for (SequenceEntry e : entries) listModel.addElement(e);
-                    status.setText(entries.size() + " sequences loaded");
-                }
-            } catch (Exception ex) {
-                rom = null; listModel.clear();
-                JOptionPane.showMessageDialog(this, "Failed to read ROM: " + ex.getMessage(),
+    /** Maps, validates and parses the ROM off the EDT, filling the list in batches. */
+    private final class LoadTask extends Task<RomReader, SequenceEntry> {
+        private final File romFile;
+        private boolean notSm64;
+
+        LoadTask(File romFile) {
+            this.romFile = romFile;
+        }
+
+        @Override
+        RomReader work() throws IOException {
+            RomReader r = new RomReader(romFile);
+            setProgress(10);
+            if (!r.looksLikeSm64()) {
+                notSm64 = true;
+                return null;
+            }
+            if (isCancelled()) return null;
+            setProgress(20);
+            List<SequenceEntry> entries = cache.index(r, false).sequences;
+            setProgress(60);
+            for (int i = 0; i < entries.size() && !isCancelled(); i += LIST_BATCH) {
+                int end = Math.min(entries.size(), i + LIST_BATCH);
+                publish(entries.subList(i, end).toArray(new SequenceEntry[0]));
+                setProgress(60 + 40 * end / entries.size());
+            }
+            return r;
+        }
+
+        @Override
+        protected void process(List<SequenceEntry> chunk) {
+            // One model event per batch rather than one per row.
+            if (!isCancelled()) listModel.addAll(chunk);
+        }
+
+        @Override
+        void succeeded(RomReader r) {
+            if (notSm64) {
+                JOptionPane.showMessageDialog(Sm64MusicExtractor.this,
+                        "This does not look like SM64 (title not found).",
                         "Error", JOptionPane.ERROR_MESSAGE);
-                status.setText("Load error");
+                status.setText("No ROM loaded");
+                return;
+            }
+            rom = r;
+            if (listModel.isEmpty()) {
+                JOptionPane.showMessageDialog(Sm64MusicExtractor.this,
+                        "No sequences found. (Sequence bank header not recognized.)",
+                        "Warning", JOptionPane.WARNING_MESSAGE);
+                status.setText("0 sequences");
+            } else {
+                status.setText(listModel.size() + " sequences loaded");
             }
         }
+
+        @Override
+        void cancelled() {
+            listModel.clear();
+            status.setText("Loading cancelled");
+        }
+
+        @Override
+        void failed(Throwable t) {
+            listModel.clear();
+            JOptionPane.showMessageDialog(Sm64MusicExtractor.this, "Failed to read ROM: " + t.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            status.setText("Load error");
+        }
     }
 
     private void exportSelected() {
@@ -107,107 +251,133 @@ public class Sm64MusicExtractor extends JFrame {
         if (sel == null) return;
 
         JFileChooser saveChooser = new JFileChooser();
-        saveChooser.setDialogTitle("Save Sequence As");
-        saveChooser.setSelectedFile(new File(
-            String.format("seq_%02X_0x%06X.txt", sel.id, sel.seqOffset)
-        ));
+        saveChooser.setDialogTitle("Save Sequence As (.m64 = raw, .txt = hex dump)");
+        saveChooser.setSelectedFile(new File(SequenceExporter.fileName(sel, SequenceExporter.Format.RAW)));
 
         if (saveChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File outFile = saveChooser.getSelectedFile();
-            try (FileWriter fw = new FileWriter(outFile)) {
-                byte[] data = rom.getBytes(sel.seqOffset, sel.length);
-                for (int i = 0; i < data.length; i++) {
-                    int off = sel.seqOffset + i;
-                    fw.write(String.format("0x%06X: %02X%n", off, data[i] & 0xFF));
+            SequenceExporter.Format fmt = outFile.getName().toLowerCase().endsWith(".txt")
+                    ? SequenceExporter.Format.HEX : SequenceExporter.Format.RAW;
+            RomReader r = rom;
+            new Task<Void, Void>() {
+                @Override
+                Void work() throws IOException {
+                    SequenceExporter.write(r, sel, fmt, outFile.toPath());
+                    return null;
                 }
-                status.setText("Saved: " + outFile.getName());
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Failed export: " + ex.getMessage(),
-                        "Error", JOptionPane.ERROR_MESSAGE);
-            }
+
+                @Override
+                void succeeded(Void result) {
+                    status.setText("Saved: " + outFile.getName());
+                }
+            }.start("Saving " + outFile.getName() + "…");
         }
     }
 
     private void viewSequence(SequenceEntry sel) {
         if (rom == null || sel == null) return;
-        byte[] data = rom.getBytes(sel.seqOffset, sel.length);
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < data.length; i++) {
-            int off = sel.seqOffset + i;
-            sb.append(String.format("0x%06X: %02X%n", off, data[i] & 0xFF));
-        }
-        JTextArea textArea = new JTextArea(sb.toString());
-        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        textArea.setEditable(false);
-        textArea.setCaretPosition(0);
-        JScrollPane scroll = new JScrollPane(textArea);
-
-        JOptionPane.showMessageDialog(this, scroll,
-                "Sequence " + sel.id + " (" + sel.length + " bytes)",
-                JOptionPane.PLAIN_MESSAGE);
+        RomReader r = rom;
+        HexViewer.showDialog(this, "Sequence " + sel.id + " (" + sel.length + " bytes)",
+                sel.seqOffset, () -> r.slice(sel.seqOffset, sel.length));
+    }
+
+    /** Ask for raw .m64 or hex dump; null if the dialog was dismissed. */
+    private SequenceExporter.Format chooseFormat() {
+        Object[] options = {"Raw .m64", "Hex dump .txt"};
+        int choice = JOptionPane.showOptionDialog(this, "Export format:", "Export",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice == 0) return SequenceExporter.Format.RAW;
+        if (choice == 1) return SequenceExporter.Format.HEX;
+        return null;
     }
 
-    /** Export all sequences as byte dumps (old behavior). */
+    /** Export every sequence to its own file in a folder. */
     private void exportAllSequences() {
         if (rom == null || listModel.isEmpty()) return;
+        SequenceExporter.Format fmt = chooseFormat();
+        if (fmt == null) return;
         JFileChooser dirChooser = new JFileChooser();
         dirChooser.setDialogTitle("Choose folder to export all sequences");
         dirChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         if (dirChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File dir = dirChooser.getSelectedFile();
-            int ok = 0;
-            for (int i = 0; i < listModel.size(); i++) {
-                SequenceEntry se = listModel.get(i);
-                File out = new File(dir, String.format("seq_%02X_0x%06X.txt", se.id, se.seqOffset));
-                try (FileWriter fw = new FileWriter(out)) {
-                    byte[] data = rom.getBytes(se.seqOffset, se.length);
-                    for (int j = 0; j < data.length; j++) {
-                        int off = se.seqOffset + j;
-                        fw.write(String.format("0x%06X: %02X%n", off, data[j] & 0xFF));
+            RomReader r = rom;
+            List<SequenceEntry> entries = Collections.list(listModel.elements());
+            new Task<Integer, Void>() {
+                @Override
+                Integer work() {
+                    int ok = 0;
+                    for (int i = 0; i < entries.size() && !isCancelled(); i++) {
+                        SequenceEntry se = entries.get(i);
+                        File out = new File(dir, SequenceExporter.fileName(se, fmt));
+                        try {
+                            SequenceExporter.write(r, se, fmt, out.toPath());
+                            ok++;
+                        } catch (IOException ignore) { }
+                        setProgress(100 * (i + 1) / entries.size());
                     }
-                    ok++;
-                } catch (IOException ignore) { }
-            }
-            status.setText("Exported " + ok + " sequences to " + dir.getAbsolutePath());
+                    return ok;
+                }
+
+                @Override
+                void succeeded(Integer ok) {
+                    status.setText("Exported " + ok + " sequences to " + dir.getAbsolutePath());
+                }
+            }.start("Exporting " + entries.size() + " sequences…");
         }
     }
 
-    /** Export all sequences as range lines. */
-    private void exportAllRanges() {
+    /** Export every sequence into a single zip archive. */
+    private void exportAllToArchive() {
         if (rom == null || listModel.isEmpty()) return;
+        SequenceExporter.Format fmt = chooseFormat();
+        if (fmt == null) return;
         JFileChooser saveChooser = new JFileChooser();
-        saveChooser.setDialogTitle("Save All Ranges As");
-        saveChooser.setSelectedFile(new File("all_ranges.txt"));
+        saveChooser.setDialogTitle("Save Sequence Archive As");
+        saveChooser.setSelectedFile(new File("sequences.zip"));
         if (saveChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File outFile = saveChooser.getSelectedFile();
-            try (FileWriter fw = new FileWriter(outFile)) {
-                for (int i = 0; i < listModel.size(); i++) {
-                    SequenceEntry se = listModel.get(i);
-                    int start = se.seqOffset;
-                    int end = se.seqOffset + se.length;
-                    fw.write(String.format("RANGE: %06X-%06X%n", start, end));
+            RomReader r = rom;
+            List<SequenceEntry> entries = Collections.list(listModel.elements());
+            new Task<Integer, Void>() {
+                @Override
+                Integer work() throws IOException {
+                    SwingWorker<?, ?> self = this;
+                    int n = SequenceExporter.writeArchive(r, entries, fmt, outFile.toPath(), new SequenceExporter.Progress() {
+                        @Override
+                        public void exported(int done, int total) {
+                            setProgress(100 * done / total);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return self.isCancelled();
+                        }
+                    });
+                    if (isCancelled()) Files.deleteIfExists(outFile.toPath());
+                    return n;
                 }
-                status.setText("Saved ranges to " + outFile.getName());
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Failed saving ranges: " + ex.getMessage(),
-                        "Error", JOptionPane.ERROR_MESSAGE);
-            }
+
+                @Override
+                void succeeded(Integer n) {
+                    status.setText("Archived " + n + " sequences to " + outFile.getName());
+                }
+            }.start("Archiving " + entries.size() + " sequences…");
         }
     }
 
+    /** Export all sequences as range lines. */
+    private void exportAllRanges() {
+        if (rom == null || listModel.isEmpty()) return;
+        saveRanges("Save All Ranges As", "all_ranges", Collections.list(listModel.elements()));
+    }
+
     /** Copy selected ranges to clipboard. */
     private void copySelectedRanges() {
         List<SequenceEntry> selected = seqList.getSelectedValuesList();
         if (selected.isEmpty()) return;
-        StringBuilder sb = new StringBuilder();
-        for (SequenceEntry sel : selected) {
-            int start = sel.seqOffset;
-            int end = sel.seqOffset + sel.length;
-            sb.append(String.format("RANGE: %06X-%06X%n", start, end));
-        }
-        StringSelection selection = new StringSelection(sb.toString());
+        String text = RangeExporter.toString(RangeExporter.Format.RANGE, false, selected);
+        StringSelection selection = new StringSelection(text);
         Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, null);
         status.setText("Copied " + selected.size() + " range(s) to clipboard.");
     }
@@ -216,24 +386,62 @@ public class Sm64MusicExtractor extends JFrame {
     private void saveSelectedRanges() {
         List<SequenceEntry> selected = seqList.getSelectedValuesList();
         if (selected.isEmpty()) return;
+        saveRanges("Save Selected Ranges As", "ranges", selected);
+    }
+
+    /** Ask for a file and a format (one file filter per {@link RangeExporter.Format}) and export. */
+    private void saveRanges(String title, String baseName, List<SequenceEntry> entries) {
         JFileChooser saveChooser = new JFileChooser();
-        saveChooser.setDialogTitle("Save Selected Ranges As");
-        saveChooser.setSelectedFile(new File("ranges.txt"));
-        if (saveChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File outFile = saveChooser.getSelectedFile();
-            try (FileWriter fw = new FileWriter(outFile)) {
-                for (SequenceEntry sel : selected) {
-                    int start = sel.seqOffset;
-                    int end = sel.seqOffset + sel.length;
-                    fw.write(String.format("RANGE: %06X-%06X%n", start, end));
+        saveChooser.setDialogTitle(title);
+        saveChooser.setAcceptAllFileFilterUsed(false);
+        RangeExporter.Format[] formats = RangeExporter.Format.values();
+        FileNameExtensionFilter[] filters = new FileNameExtensionFilter[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            filters[i] = new FileNameExtensionFilter(formats[i].description + " (*." + formats[i].extension + ")",
+                    formats[i].extension);
+            saveChooser.addChoosableFileFilter(filters[i]);
+        }
+        saveChooser.setFileFilter(filters[0]);
+        saveChooser.setSelectedFile(new File(baseName + "." + formats[0].extension));
+        if (saveChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        RangeExporter.Format format = formats[0];
+        for (int i = 0; i < formats.length; i++) {
+            if (saveChooser.getFileFilter() == filters[i]) format = formats[i];
+        }
+        File chosen = saveChooser.getSelectedFile();
+        File outFile = chosen.getName().contains(".") ? chosen : new File(chosen.getPath() + "." + format.extension);
+        RangeExporter.Format fmt = format;
+        new Task<Integer, Void>() {
+            @Override
+            Integer work() throws IOException {
+                int n;
+                try (RangeExporter w = RangeExporter.open(outFile.toPath(), fmt, false)) {
+                    for (int i = 0; i < entries.size() && !isCancelled(); i++) {
+                        SequenceEntry se = entries.get(i);
+                        w.add(se.seqOffset, se.seqOffset + se.length);
+                        setProgress(100 * (i + 1) / entries.size());
+                    }
+                    w.finish();
+                    n = w.count();
                 }
-                status.setText("Saved " + selected.size() + " range(s) to " + outFile.getName());
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Failed saving: " + ex.getMessage(),
+                if (isCancelled()) Files.deleteIfExists(outFile.toPath());
+                return n;
+            }
+
+            @Override
+            void succeeded(Integer n) {
+                status.setText("Saved " + n + " range(s) to " + outFile.getName());
+            }
+
+            @Override
+            void failed(Throwable t) {
+                JOptionPane.showMessageDialog(Sm64MusicExtractor.this,
+                        "Failed saving ranges: " + t.getMessage(),
                         "Error", JOptionPane.ERROR_MESSAGE);
+                status.setText("Export error");
             }
-        }
+        }.start("Saving " + entries.size() + " range(s) to " + outFile.getName() + "…");
     }
 
     public static void main(String[] args) {
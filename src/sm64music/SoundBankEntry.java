@@ -0,0 +1,45 @@
+package sm64music;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One entry of a sound bank table: an instrument bank in {@code sound_data.ctl} or its sample
+ * data in {@code sound_data.tbl}. Both files share the sequence bank's header layout, so the
+ * offsets here are absolute ROM offsets, like {@link SequenceEntry}'s.
+ */
+public class SoundBankEntry {
+    public enum Kind {
+        CTL(RomReader.CTL_START), TBL(RomReader.TBL_START);
+
+        /** Where SM64 (U) keeps this table. */
+        public final int vanillaStart;
+
+        Kind(int vanillaStart) {
+            this.vanillaStart = vanillaStart;
+        }
+    }
+
+    public final Kind kind;
+    public final int id;           // index in table
+    public final int tableOffset;  // entry location inside table header
+    public final int offset;       // ROM offset (absolute)
+    public final int length;       // bytes
+
+    public SoundBankEntry(Kind kind, int id, int tableOffset, int offset, int length) {
+        this.kind = kind;
+        this.id = id;
+        this.tableOffset = tableOffset;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** The entry's bytes; a view of the ROM mapping for .z64 images, never a copy of the whole table. */
+    public ByteBuffer data(RomReader rom) {
+        return rom.slice(offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s %02X] @0x%06X (len=%d)", kind, id, offset, length);
+    }
+}
@@ -0,0 +1,218 @@
+package sm64ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Hex viewer for a byte range of any size: 16 bytes per row with an ASCII column.
+ *
+ * <p>Only the rows inside the current clip are formatted and drawn, straight from the backing
+ * {@link ByteBuffer}, so opening a multi-megabyte range costs the same as a tiny one. The data
+ * itself is fetched by a {@link SwingWorker}, keeping slicing/decoding off the EDT.
+ */
+public class HexViewer extends JPanel {
+    private final HexView view = new HexView();
+    private final JScrollPane scroll = new JScrollPane(view);
+    private final JTextField gotoField = new JTextField(10);
+    private final JLabel info = new JLabel("Loading…");
+
+    public HexViewer() {
+        super(new BorderLayout());
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton gotoBtn = new JButton("Go");
+        top.add(new JLabel("Go to offset (hex):"));
+        top.add(gotoField);
+        top.add(gotoBtn);
+        top.add(info);
+        gotoBtn.addActionListener(e -> jumpToTypedOffset());
+        gotoField.addActionListener(e -> jumpToTypedOffset());
+
+        scroll.getViewport().setBackground(Color.WHITE);
+        add(top, BorderLayout.NORTH);
+        add(scroll, BorderLayout.CENTER);
+    }
+
+    /** Fetch the data with {@code loader} on a worker thread, then show it. */
+    public void load(Callable<ByteBuffer> loader, int baseOffset) {
+        info.setText("Loading…");
+        new SwingWorker<ByteBuffer, Void>() {
+            @Override
+            protected ByteBuffer doInBackground() throws Exception {
+                return loader.call();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    ByteBuffer data = get();
+                    view.setData(data, baseOffset);
+                    info.setText(String.format("0x%06X – 0x%06X (%d bytes)",
+                            baseOffset, baseOffset + data.remaining(), data.remaining()));
+                } catch (InterruptedException | ExecutionException ex) {
+                    info.setText("Load failed: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /** Scroll so the row holding ROM offset {@code offset} is at the top. */
+    public void scrollToOffset(int offset) {
+        int row = view.rowOf(offset);
+        if (row < 0) {
+            info.setText(String.format("0x%X is outside this range", offset));
+            return;
+        }
+        Rectangle r = scroll.getViewport().getViewRect();
+        view.scrollRectToVisible(new Rectangle(0, row * view.rowHeight, 1, r.height));
+    }
+
+    private void jumpToTypedOffset() {
+        String t = gotoField.getText().trim();
+        if (t.startsWith("0x") || t.startsWith("0X")) t = t.substring(2);
+        try {
+            scrollToOffset(Integer.parseUnsignedInt(t, 16));
+        } catch (NumberFormatException ex) {
+            info.setText("Not a hex offset: " + gotoField.getText());
+        }
+    }
+
+    /** Open a non-modal viewer window for a range loaded by {@code loader}. */
+    public static void showDialog(Component parent, String title, int baseOffset, Callable<ByteBuffer> loader) {
+        Window owner = parent != null ? SwingUtilities.getWindowAncestor(parent) : null;
+        JDialog dlg = new JDialog(owner, title, Dialog.ModalityType.MODELESS);
+        HexViewer viewer = new HexViewer();
+        dlg.setContentPane(viewer);
+        dlg.setSize(720, 520);
+        dlg.setLocationRelativeTo(parent);
+        dlg.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dlg.setVisible(true);
+        viewer.load(loader, baseOffset);
+    }
+
+    /** The row renderer; lays out one line per 16 bytes and paints only the clipped rows. */
+    private static final class HexView extends JComponent implements Scrollable {
+        private static final int BYTES_PER_ROW = 16;
+        private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+        private ByteBuffer data = ByteBuffer.allocate(0);
+        private int base;
+        private int digits = 6;
+        private int rows;
+        private final char[] line = new char[2 + 8 + 2 + BYTES_PER_ROW * 3 + 2 + BYTES_PER_ROW];
+
+        final int rowHeight;
+        private final int charWidth;
+        private final int ascent;
+
+        HexView() {
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            FontMetrics fm = getFontMetrics(getFont());
+            rowHeight = fm.getHeight();
+            charWidth = fm.charWidth('0');
+            ascent = fm.getAscent();
+            setOpaque(true);
+            setBackground(Color.WHITE);
+        }
+
+        void setData(ByteBuffer data, int base) {
+            this.data = data.slice();
+            this.base = base;
+            this.digits = (long) base + data.remaining() > 0xFFFFFF ? 8 : 6;
+            this.rows = (this.data.limit() + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+            revalidate();
+            repaint();
+        }
+
+        int rowOf(int offset) {
+            long rel = (long) offset - base;
+            if (rel < 0 || rel >= data.limit()) return -1;
+            return (int) (rel / BYTES_PER_ROW);
+        }
+
+        private int lineChars() {
+            return 2 + digits + 2 + BYTES_PER_ROW * 3 + 1 + BYTES_PER_ROW;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            // Clamp the pixel height for ranges too tall to express in an int.
+            long h = (long) rows * rowHeight;
+            return new Dimension((lineChars() + 1) * charWidth, (int) Math.min(h, Integer.MAX_VALUE));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setColor(Color.BLACK);
+            g.setFont(getFont());
+
+            int first = Math.max(0, clip.y / rowHeight);
+            int last = Math.min(rows - 1, (clip.y + clip.height) / rowHeight);
+            for (int row = first; row <= last; row++) {
+                int n = formatRow(row);
+                g.drawChars(line, 0, n, charWidth / 2, row * rowHeight + ascent);
+            }
+        }
+
+        /** Format row {@code row} into {@link #line}; returns its length. */
+        private int formatRow(int row) {
+            int rel = row * BYTES_PER_ROW;
+            int off = base + rel;
+            int count = Math.min(BYTES_PER_ROW, data.limit() - rel);
+            int p = 0;
+            line[p++] = '0';
+            line[p++] = 'x';
+            for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) line[p++] = HEX[(off >>> shift) & 0xF];
+            line[p++] = ':';
+            line[p++] = ' ';
+            for (int i = 0; i < BYTES_PER_ROW; i++) {
+                if (i < count) {
+                    int b = data.get(rel + i) & 0xFF;
+                    line[p++] = HEX[b >>> 4];
+                    line[p++] = HEX[b & 0xF];
+                } else {
+                    line[p++] = ' ';
+                    line[p++] = ' ';
+                }
+                line[p++] = ' ';
+            }
+            line[p++] = ' ';
+            for (int i = 0; i < count; i++) {
+                int b = data.get(rel + i) & 0xFF;
+                line[p++] = b >= 0x20 && b < 0x7F ? (char) b : '.';
+            }
+            return p;
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return new Dimension((lineChars() + 1) * charWidth, 30 * rowHeight);
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? rowHeight : charWidth;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+            if (orientation == SwingConstants.HORIZONTAL) return visible.width;
+            return Math.max(rowHeight, (visible.height / rowHeight - 1) * rowHeight);
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return false;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+}
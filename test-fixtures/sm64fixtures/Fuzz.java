@@ -0,0 +1,66 @@
+package sm64fixtures;
+
+import org.junit.jupiter.api.function.Executable;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Shared plumbing of the {@code *FuzzTest} classes. Each test is parameterized over
+ * {@link #iterations()} and draws its input from {@link #random}, seeded from the run seed, the
+ * case and the iteration, so a failing iteration repeats exactly.
+ *
+ * <p>{@code test} runs {@value #DEFAULT_ITERATIONS} iterations with seed {@value #DEFAULT_SEED};
+ * the opt-in {@code fuzz} task soaks with more ({@code -Dfuzz.iterations}, {@code -Dfuzz.seed}).
+ */
+public final class Fuzz {
+    public static final int DEFAULT_ITERATIONS = 40;
+    public static final long DEFAULT_SEED = 1;
+    public static final int ITERATIONS = Integer.getInteger("fuzz.iterations", DEFAULT_ITERATIONS);
+    public static final long SEED = Long.getLong("fuzz.seed", DEFAULT_SEED);
+
+    /** Allocation a rejected or tiny case may make (exception, message, small lists). */
+    public static final long SMALL_BUDGET = 256 << 10;
+
+    /** Catches hangs only; far above what any case needs, so load on the machine cannot trip it. */
+    private static final Duration HANG_LIMIT = Duration.ofSeconds(60);
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Fuzz() { }
+
+    /** Iteration numbers, for {@code @MethodSource("sm64fixtures.Fuzz#iterations")}. */
+    public static IntStream iterations() {
+        return IntStream.range(0, ITERATIONS);
+    }
+
+    public static Random random(String name, int iteration) {
+        return new Random(SEED * 1_000_003L + iteration * 31L + name.hashCode());
+    }
+
+    /** Bytes allocated by the current thread so far. */
+    public static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Run one case, failing if it throws or never returns; failures name the seed to rerun
+     * with. The case runs on a separate thread, so it must take its {@link #allocated()}
+     * readings itself.
+     */
+    public static void run(String name, int iteration, Executable c) {
+        String what = name + " #" + iteration + " (seed " + SEED + ")";
+        assertTimeoutPreemptively(HANG_LIMIT, () -> {
+            try {
+                c.execute();
+            } catch (Throwable t) {
+                throw new AssertionError(what + ": " + t, t);
+            }
+        }, () -> what + " hung");
+    }
+}
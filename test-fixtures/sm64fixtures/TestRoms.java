@@ -0,0 +1,124 @@
+package sm64fixtures;
+
+import sm64mio.MIO0Encoder;
+import sm64music.RomReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic ROM images for the tests and benchmarks, so no copyrighted ROM is needed.
+ *
+ * <p>{@link #z64()} is an 8 MB big-endian image with an SM64 header and:
+ * <ul>
+ *   <li>{@link #MIO0_BLOCKS} MIO0 blocks (compressed with {@link MIO0Encoder}) between runs of
+ *       random filler below the music region;
+ *   <li>a {@link #SEQUENCES}-entry bank at {@link RomReader#MUSIC_START} holding M64-like data,
+ *       which fills the music region to within a few hundred bytes of {@link RomReader#MUSIC_END};
+ *   <li>{@link #AFTER_MUSIC} everywhere after the music region (bank sets etc.).
+ * </ul>
+ * The image is built once; every call returns a fresh copy of the same bytes.
+ */
+public final class TestRoms {
+    public static final int ROM_SIZE = 0x800000;
+    public static final int SEQUENCES = 35;
+    public static final int MIO0_BLOCKS = 64;
+    public static final int MIO0_BLOCK_SIZE = 0x8000;   // uncompressed
+    /** ROM offset of the first MIO0 block; the rest follow at an even stride. */
+    public static final int MIO0_START = 0x100000;
+    /** Fill byte of everything between the music region and the end of the image. */
+    public static final byte AFTER_MUSIC = (byte) 0xA5;
+
+    private static final byte[] Z64 = build(64);
+
+    private TestRoms() { }
+
+    public static byte[] z64() {
+        return Z64.clone();
+    }
+
+    private static byte[] build(long seed) {
+        Random rnd = new Random(seed);
+        byte[] rom = new byte[ROM_SIZE];
+        rnd.nextBytes(rom);
+        ByteBuffer b = ByteBuffer.wrap(rom);
+        b.putInt(0, 0x80371240);
+        byte[] title = "SUPER MARIO 64      ".getBytes();
+        System.arraycopy(title, 0, rom, 0x20, title.length);
+        Arrays.fill(rom, RomReader.MUSIC_END, rom.length, AFTER_MUSIC);
+
+        writeMio0Blocks(rom, rnd);
+        writeSequenceBank(b, rnd);
+        return rom;
+    }
+
+    /** Compressible blocks (short repeated phrases) placed below the music region. */
+    private static void writeMio0Blocks(byte[] rom, Random rnd) {
+        byte[] raw = new byte[MIO0_BLOCK_SIZE];
+        int at = MIO0_START;
+        int stride = (RomReader.MUSIC_START - at) / MIO0_BLOCKS;
+        for (int i = 0; i < MIO0_BLOCKS; i++) {
+            for (int p = 0; p < raw.length; ) {
+                int run = 4 + rnd.nextInt(28);
+                int from = p > 64 && rnd.nextBoolean() ? p - 1 - rnd.nextInt(Math.min(p, 4096) - 1) : -1;
+                for (int k = 0; k < run && p < raw.length; k++, p++) {
+                    raw[p] = from >= 0 ? raw[from + k] : (byte) rnd.nextInt(32);
+                }
+            }
+            byte[] packed = MIO0Encoder.compress(raw);
+            System.arraycopy(packed, 0, rom, at, packed.length);
+            at += stride;
+        }
+    }
+
+    /** Sequence bank with {@link #SEQUENCES} entries, 16-byte aligned, filling the music region. */
+    private static void writeSequenceBank(ByteBuffer b, Random rnd) {
+        int h = RomReader.MUSIC_START;
+        b.putShort(h, (short) 3).putShort(h + 2, (short) SEQUENCES);
+        int off = (4 + SEQUENCES * 8 + 15) & ~15;
+        int avg = (RomReader.MUSIC_END - h - off) / SEQUENCES - 16;
+        for (int i = 0; i < SEQUENCES; i++) {
+            int len = avg - rnd.nextInt(16);
+            b.putInt(h + 4 + i * 8, off).putInt(h + 8 + i * 8, len);
+            for (int j = 0; j < len; j++) b.put(h + off + j, (byte) (0x80 + rnd.nextInt(0x40)));
+            off = (off + len + 15) & ~15;
+        }
+    }
+
+    /** .n64: bytes swapped within each 16-bit pair. */
+    public static byte[] n64(byte[] z64) {
+        byte[] out = z64.clone();
+        for (int i = 0; i + 1 < out.length; i += 2) {
+            byte t = out[i];
+            out[i] = out[i + 1];
+            out[i + 1] = t;
+        }
+        return out;
+    }
+
+    /** .v64: bytes reversed within each 32-bit word. */
+    public static byte[] v64(byte[] z64) {
+        byte[] out = new byte[z64.length];
+        ByteBuffer.wrap(out).asIntBuffer().put(ByteBuffer.wrap(z64).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+        return out;
+    }
+
+    /** {@code len} random bytes; the same seed gives the same bytes. */
+    public static byte[] bytes(int len, int seed) {
+        byte[] b = new byte[len];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    public static File writeTemp(byte[] image, String suffix) throws IOException {
+        File f = File.createTempFile("sm64", suffix);
+        f.deleteOnExit();
+        Files.write(f.toPath(), image);
+        return f;
+    }
+}
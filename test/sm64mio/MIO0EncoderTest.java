@@ -0,0 +1,109 @@
+package sm64mio;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Round trips through {@link MIO0Encoder} and {@link MIO0Decoder} in both modes. */
+class MIO0EncoderTest {
+    /** Sizes around the match limits and the 4 KB window, and well past it so the window wraps. */
+    private static final int[] SIZES = { 1, 2, 3, 17, 18, 19, 4095, 4096, 4097, 20_000, 70_000 };
+
+    private static byte[] random(int len, long seed) {
+        byte[] b = new byte[len];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    /** Four symbols, so most positions have many short matches. */
+    private static byte[] lowEntropy(int len, long seed) {
+        Random rnd = new Random(seed);
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) b[i] = (byte) rnd.nextInt(4);
+        return b;
+    }
+
+    /** Long runs of one byte (overlapping back-references) and repeats of earlier phrases. */
+    private static byte[] runHeavy(int len, long seed) {
+        Random rnd = new Random(seed);
+        byte[] b = new byte[len];
+        for (int p = 0; p < len; ) {
+            int run = 1 + rnd.nextInt(300);
+            if (p > 64 && rnd.nextBoolean()) {
+                int from = p - 1 - rnd.nextInt(Math.min(p, 8192) - 1);
+                for (int k = 0; k < run && p < len; k++, p++) b[p] = b[from + k];
+            } else {
+                byte v = (byte) rnd.nextInt(256);
+                for (int k = 0; k < run && p < len; k++, p++) b[p] = v;
+            }
+        }
+        return b;
+    }
+
+    private static void assertRoundTrip(MIO0Encoder enc, byte[] data) throws IOException {
+        byte[] packed = enc.encode(data, 0, data.length);
+        ByteBuffer src = ByteBuffer.wrap(packed);
+        assertArrayEquals(data, MIO0Decoder.decodeToArray(src, 0), "decodeToArray, " + data.length + " bytes");
+
+        MIO0Decoder dec = new MIO0Decoder();
+        int n = dec.decode(src, 0);
+        assertEquals(data.length, n);
+        assertArrayEquals(data, Arrays.copyOf(dec.buffer(), n), "reused decoder, " + data.length + " bytes");
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void randomData(MIO0Encoder.Mode mode) throws IOException {
+        MIO0Encoder enc = new MIO0Encoder(mode);
+        for (int len : SIZES) assertRoundTrip(enc, random(len, len));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void lowEntropyData(MIO0Encoder.Mode mode) throws IOException {
+        MIO0Encoder enc = new MIO0Encoder(mode);
+        for (int len : SIZES) assertRoundTrip(enc, lowEntropy(len, len));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void runHeavyData(MIO0Encoder.Mode mode) throws IOException {
+        MIO0Encoder enc = new MIO0Encoder(mode);
+        for (int len : SIZES) assertRoundTrip(enc, runHeavy(len, len));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void allZeroesCompressWell(MIO0Encoder.Mode mode) throws IOException {
+        byte[] zeroes = new byte[70_000];
+        MIO0Encoder enc = new MIO0Encoder(mode);
+        assertRoundTrip(enc, zeroes);
+        assertTrue(enc.encode(zeroes, 0, zeroes.length).length < zeroes.length / 8);
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void encodesASubrange(MIO0Encoder.Mode mode) throws IOException {
+        byte[] data = runHeavy(10_000, 7);
+        byte[] packed = new MIO0Encoder(mode).encode(data, 1234, 5000);
+        assertArrayEquals(Arrays.copyOfRange(data, 1234, 6234), MIO0Decoder.decodeToArray(ByteBuffer.wrap(packed), 0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MIO0Encoder.Mode.class)
+    void blockInsideALargerImage(MIO0Encoder.Mode mode) throws IOException {
+        byte[] data = lowEntropy(9000, 3);
+        byte[] packed = new MIO0Encoder(mode).encode(data, 0, data.length);
+        byte[] image = random(packed.length + 300, 1);
+        System.arraycopy(packed, 0, image, 100, packed.length);
+        assertArrayEquals(data, MIO0Decoder.decodeToArray(ByteBuffer.wrap(image), 100));
+    }
+}
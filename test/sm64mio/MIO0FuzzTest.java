@@ -0,0 +1,158 @@
+package sm64mio;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import sm64fixtures.Fuzz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Property and fuzz checks for the MIO0 decoder and scanner: valid blocks round-trip exactly,
+ * corrupt or forged ones are rejected with {@link IOException} only, and a hardened decode
+ * never allocates the output a forged header asks for.
+ */
+class MIO0FuzzTest {
+    private static final String ITERATIONS = "sm64fixtures.Fuzz#iterations";
+
+    /** Compressible payload: short runs copied from earlier output or drawn from a small alphabet. */
+    private static byte[] payload(Random rnd, int maxLen) {
+        byte[] raw = new byte[1 + rnd.nextInt(maxLen)];
+        for (int p = 0; p < raw.length; ) {
+            int run = 1 + rnd.nextInt(24);
+            int from = p > 8 && rnd.nextBoolean() ? p - 1 - rnd.nextInt(Math.min(p, 4096) - 1) : -1;
+            for (int k = 0; k < run && p < raw.length; k++, p++) {
+                raw[p] = from >= 0 ? raw[from + k] : (byte) rnd.nextInt(rnd.nextBoolean() ? 4 : 256);
+            }
+        }
+        return raw;
+    }
+
+    /** {@code block} at a random offset inside random filler. */
+    private static ByteBuffer embed(Random rnd, byte[] block, int[] at) {
+        byte[] img = new byte[block.length + rnd.nextInt(64) + rnd.nextInt(64)];
+        rnd.nextBytes(img);
+        at[0] = rnd.nextInt(img.length - block.length + 1);
+        System.arraycopy(block, 0, img, at[0], block.length);
+        return ByteBuffer.wrap(img);
+    }
+
+    /** Valid blocks decode exactly through every entry point; compressedSize stays inside the block. */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void roundTrip(int iteration) {
+        Fuzz.run("roundTrip", iteration, () -> {
+            Random rnd = Fuzz.random("roundTrip", iteration);
+            byte[] raw = payload(rnd, 1 << 16);
+            byte[] packed = MIO0Encoder.compress(raw);
+            int[] at = new int[1];
+            ByteBuffer src = embed(rnd, packed, at);
+
+            assertArrayEquals(raw, MIO0Decoder.decodeToArray(src, at[0]), "decodeToArray");
+            assertArrayEquals(raw, MIO0Decoder.decodeToArray(src, at[0], MIO0Header.MAX_UNCOMPRESSED),
+                    "hardened decodeToArray");
+            MIO0Decoder hardened = new MIO0Decoder(raw.length);
+            int n = hardened.decode(src, at[0]);
+            assertEquals(raw.length, n);
+            assertArrayEquals(raw, Arrays.copyOf(hardened.buffer(), n), "hardened decoder");
+            int size = MIO0Decoder.compressedSize(src, at[0]);
+            assertTrue(size > MIO0Header.SIZE && size <= packed.length, "compressedSize " + size + " of " + packed.length);
+        });
+    }
+
+    /** Corrupted or truncated blocks: only IOException, and any output has the declared length. */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void mutatedBlocks(int iteration) {
+        Fuzz.run("mutatedBlocks", iteration, () -> {
+            Random rnd = Fuzz.random("mutatedBlocks", iteration);
+            byte[] block = MIO0Encoder.compress(payload(rnd, 4096));
+            int flips = rnd.nextInt(9);
+            for (int i = 0; i < flips; i++) {
+                // Mostly the streams, sometimes the header fields (the magic is kept).
+                int pos = rnd.nextInt(4) == 0 ? 4 + rnd.nextInt(12) : rnd.nextInt(block.length);
+                if (pos >= 4) block[pos] = (byte) rnd.nextInt(256);
+            }
+            if (rnd.nextBoolean()) block = Arrays.copyOf(block, MIO0Header.SIZE + rnd.nextInt(block.length));
+            ByteBuffer src = ByteBuffer.wrap(block);
+            MIO0Header h = MIO0Header.read(src, 0);
+
+            try {
+                byte[] out = MIO0Decoder.decodeToArray(src, 0);
+                assertNotNull(h, "decoded a block without a valid header");
+                assertEquals(h.uncompressedLen, out.length, "decoded length differs from header");
+            } catch (IOException expected) {
+                // rejected
+            }
+            long before = Fuzz.allocated();
+            try {
+                int n = new MIO0Decoder(MIO0Header.MAX_UNCOMPRESSED).decode(src, 0);
+                assertNotNull(h, "hardened decode of a block without a valid header");
+                assertEquals(h.uncompressedLen, n, "hardened length differs from header");
+                assertTrue(n <= h.maxOutput(block.length), "hardened accepted more than the streams hold");
+            } catch (IOException expected) {
+                long used = Fuzz.allocated() - before;
+                assertTrue(h == null || used <= h.uncompressedLen + Fuzz.SMALL_BUDGET,
+                        "rejected block still allocated " + used + " bytes");
+            }
+            try {
+                assertTrue(MIO0Decoder.compressedSize(src, 0) <= block.length, "compressedSize past the source");
+            } catch (IOException expected) {
+                // rejected
+            }
+        });
+    }
+
+    /** A header declaring up to the 4 MB cap over a tiny body: hardened decode must not allocate it. */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void forgedHeader(int iteration) {
+        Fuzz.run("forgedHeader", iteration, () -> {
+            Random rnd = Fuzz.random("forgedHeader", iteration);
+            byte[] block = new byte[MIO0Header.SIZE + rnd.nextInt(256)];
+            rnd.nextBytes(block);
+            ByteBuffer b = ByteBuffer.wrap(block);
+            b.putInt(0, MIO0Header.MAGIC);
+            b.putInt(4, 1 + rnd.nextInt(MIO0Header.MAX_UNCOMPRESSED));
+            b.putInt(8, MIO0Header.SIZE + rnd.nextInt(block.length - MIO0Header.SIZE + 1));
+            b.putInt(12, MIO0Header.SIZE + rnd.nextInt(block.length - MIO0Header.SIZE + 1));
+            MIO0Header h = MIO0Header.read(b, 0);
+
+            long before = Fuzz.allocated();
+            try {
+                byte[] out = MIO0Decoder.decodeToArray(b, 0, MIO0Header.MAX_UNCOMPRESSED);
+                assertNotNull(h, "decoded a block without a valid header");
+                assertTrue(out.length <= h.maxOutput(block.length), "accepted an impossible length");
+            } catch (IOException expected) {
+                long used = Fuzz.allocated() - before;
+                assertTrue(used <= Fuzz.SMALL_BUDGET, "rejected header still allocated " + used + " bytes");
+            }
+        });
+    }
+
+    /** Random data with "MIO0" sprinkled in: the scanner only reports headers that parse. */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void scan(int iteration) {
+        Fuzz.run("scan", iteration, () -> {
+            Random rnd = Fuzz.random("scan", iteration);
+            byte[] img = new byte[rnd.nextInt(1 << 16)];
+            rnd.nextBytes(img);
+            ByteBuffer b = ByteBuffer.wrap(img);
+            for (int i = rnd.nextInt(16); i > 0 && img.length >= 4; i--) {
+                b.putInt(rnd.nextInt(img.length - 3), MIO0Header.MAGIC);
+            }
+            int start = rnd.nextInt(img.length + 1) - 8, end = start + rnd.nextInt(img.length + 16);
+            for (int off : MIO0Scanner.scan(b, start, end)) {
+                assertNotNull(MIO0Header.read(b, off), "scanner reported a bad header at " + off);
+            }
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package sm64music;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link M64Parser} on hand-assembled scripts in the SM64 US command set. */
+class M64ParserTest {
+    /** Records events as strings, in the order they arrive. */
+    private static final class Recorder implements M64Visitor {
+        final List<String> events = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void channel(int channel, int offset) {
+            events.add(String.format("channel %d @%02X", channel, offset));
+        }
+
+        @Override
+        public void layer(int channel, int layer, int offset) {
+            events.add(String.format("layer %d.%d @%02X", channel, layer, offset));
+        }
+
+        @Override
+        public void tempo(int offset, int bpm) {
+            events.add("tempo " + bpm);
+        }
+
+        @Override
+        public void instrument(int channel, int layer, int offset, int instrument) {
+            events.add(String.format("instrument %d.%d %d", channel, layer, instrument));
+        }
+
+        @Override
+        public void note(int channel, int layer, int offset, int length, int pitch, int velocity, int duration) {
+            events.add(String.format("note %d.%d @%02X len=%d pitch=%02X vel=%d dur=%d",
+                    channel, layer, offset, length, pitch, velocity, duration));
+        }
+
+        @Override
+        public void error(Script script, int offset, String message) {
+            errors.add(script + " @" + Integer.toHexString(offset) + ": " + message);
+        }
+    }
+
+    private static Recorder parse(int... script) {
+        byte[] b = new byte[script.length];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) script[i];
+        Recorder r = new Recorder();
+        M64Parser.parse(ByteBuffer.wrap(b), r);
+        return r;
+    }
+
+    /** Sequence script at 0x00 that starts channel 0 at 0x10 and ends. */
+    private static final int[] SEQUENCE = {
+            0xD3, 0x80,             // 00 seq_setmutebhv 0x80
+            0xD7, 0x00, 0x01,       // 02 seq_initchannels 1
+            0xDD, 0x78,             // 05 seq_settempo 120
+            0xDB, 0x7F,             // 07 seq_setvol
+            0x90, 0x00, 0x10,       // 09 seq_startchannel 0, 0x10
+            0xFD, 0x60,             // 0C seq_delay 0x60
+            0xFF,                   // 0E seq_end
+            0x00,
+    };
+
+    private static int[] concat(int[]... parts) {
+        int n = 0;
+        for (int[] p : parts) n += p.length;
+        int[] out = new int[n];
+        int at = 0;
+        for (int[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+
+    @Test
+    void largeNotesChannelWithTwoLayers() {
+        Recorder r = parse(concat(SEQUENCE, new int[] {
+                0xC4,                   // 10 chan_largenoteson
+                0xC1, 0x05,             // 11 chan_setinstr 5
+                0xDF, 0x7F,             // 13 chan_setvol
+                0xDD, 0x40,             // 15 chan_setpan
+                0xD9, 0xFF,             // 17 chan_setdecayrelease
+                0xDA, 0x00, 0x00,       // 19 chan_setenvelope
+                0xD4, 0x00,             // 1C chan_setreverb
+                0x90, 0x00, 0x2C,       // 1E chan_setlayer 0, 0x2C
+                0x91, 0x00, 0x38,       // 21 chan_setlayer 1, 0x38
+                0x80,                   // 24 chan_ioreadval 0
+                0x70,                   // 25 chan_iowriteval 0
+                0xFD, 0x60,             // 26 chan_delay 0x60
+                0xA1,                   // 28 chan_freelayer 1
+                0xB0,                   // 29 chan_dynsetlayer 0
+                0xFF,                   // 2A chan_end
+                0x00,
+                0x27, 0x60, 0x64, 0x30, // 2C note0: pitch 27, play 60, vel 64, dur 30
+                0x67, 0x60, 0x64,       // 30 note1: play 60, vel 64
+                0xA7, 0x64, 0x30,       // 33 note2: vel 64, dur 30
+                0xC6, 0x02,             // 36 layer_setinstr 2
+                0xFF,                   // 38 layer_end (layer 1 is just this end, shared with layer 0)
+        }));
+        assertEquals(List.of(), r.errors);
+        assertEquals(List.of(
+                "tempo 120",
+                "channel 0 @10",
+                "instrument 0.-1 5",
+                "layer 0.0 @2C",
+                "layer 0.1 @38",
+                "note 0.0 @2C len=4 pitch=27 vel=100 dur=48",
+                "note 0.0 @30 len=3 pitch=27 vel=100 dur=-1",
+                "note 0.0 @33 len=3 pitch=27 vel=100 dur=48",
+                "instrument 0.0 2"), r.events);
+    }
+
+    @Test
+    void smallNotesAfterLargeNotesOff() {
+        Recorder r = parse(concat(SEQUENCE, new int[] {
+                0xC3,                   // 10 chan_largenotesoff
+                0x90, 0x00, 0x18,       // 11 chan_setlayer 0, 0x18
+                0xFD, 0x60,             // 14 chan_delay 0x60
+                0xFF,                   // 16 chan_end
+                0x00,
+                0xC0, 0x81, 0x00,       // 18 layer_delay 0x100 (two-byte var)
+                0x27, 0x81, 0x00,       // 1B note0: pitch 27, play 0x100
+                0x67,                   // 1E note1: default play percentage
+                0xA7,                   // 1F note2: last play percentage
+                0xD2,                   // 20 velocity from table
+                0xFF,                   // 21 layer_end
+        }));
+        assertEquals(List.of(), r.errors);
+        assertEquals(List.of(
+                "tempo 120",
+                "channel 0 @10",
+                "layer 0.0 @18",
+                "note 0.0 @1B len=3 pitch=27 vel=-1 dur=-1",
+                "note 0.0 @1E len=1 pitch=27 vel=-1 dur=-1",
+                "note 0.0 @1F len=1 pitch=27 vel=-1 dur=-1"), r.events);
+    }
+
+    @Test
+    void channelStartedFromAChannelAndIoCommands() {
+        Recorder r = parse(concat(SEQUENCE, new int[] {
+                0x11, 0x00, 0x1A,       // 10 chan_startchannel 1, 0x1A
+                0x30, 0x05,             // 13 chan_iowriteval2 0, 5
+                0x40, 0x05,             // 15 chan_ioreadval2 0, 5
+                0x50,                   // 17 chan_ioreadvalsub 0
+                0x00,                   // 18 chan_testlayerfinished 0
+                0xFF,                   // 19 chan_end
+                0xCB, 0x00, 0x00,       // 1A chan_readseq
+                0xCA, 0x00,             // 1D chan_setmutebhv
+                0xC7, 0x00, 0x00, 0x00, // 1F chan_writeseq
+                0xFF,                   // 23 chan_end
+        }));
+        assertEquals(List.of(), r.errors);
+        assertEquals(List.of("tempo 120", "channel 0 @10", "channel 1 @1A"), r.events);
+    }
+}
@@ -0,0 +1,186 @@
+package sm64music;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import sm64fixtures.Fuzz;
+import sm64fixtures.TestRoms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Property and fuzz checks for the ROM table parsers and {@link M64Parser}: they never throw on
+ * corrupt, truncated or byte-swapped input, everything they report lies inside the data, and
+ * allocation scales with the input rather than with what its tables claim.
+ */
+class ParserFuzzTest {
+    private static final String ITERATIONS = "sm64fixtures.Fuzz#iterations";
+    private static final byte[] FIXTURE = TestRoms.z64();
+
+    // ---- ROM tables -----------------------------------------------------------------------
+
+    /** The fixture with its tables corrupted, truncated and stored in a random byte order. */
+    private static byte[] mutatedRom(Random rnd) {
+        int size;
+        switch (rnd.nextInt(4)) {
+            case 0:  size = rnd.nextInt(0x100); break;                              // tiny
+            case 1:  size = RomReader.MUSIC_START + rnd.nextInt(0x200); break;      // cut in the bank header
+            case 2:  size = RomReader.MUSIC_START + rnd.nextInt(RomReader.MUSIC_END - RomReader.MUSIC_START); break;
+            default: size = FIXTURE.length; break;
+        }
+        byte[] rom = Arrays.copyOf(FIXTURE, size);
+        ByteBuffer b = ByteBuffer.wrap(rom);
+        int[] tables = { RomReader.MUSIC_START, RomReader.CTL_START, RomReader.TBL_START, RomReader.BANK_SETS_START };
+        for (int t : tables) {
+            if (t + 4 > size) continue;
+            if (rnd.nextBoolean()) b.putShort(t + 2, (short) rnd.nextInt(0x10000));   // count
+            for (int i = rnd.nextInt(16); i > 0; i--) {
+                int pos = t + rnd.nextInt(0x200);
+                if (pos + 4 <= size) b.putInt(pos, rnd.nextInt(4) == 0 ? -1 - rnd.nextInt(16) : rnd.nextInt());
+            }
+        }
+        switch (rnd.nextInt(3)) {
+            case 0:  return rom;
+            case 1:  return TestRoms.n64(rom);
+            default: return TestRoms.v64(rom);
+        }
+    }
+
+    /** Parsers never throw, and every entry they return lies inside the ROM. */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void romTables(int iteration) {
+        Fuzz.run("romTables", iteration, () -> {
+            Random rnd = Fuzz.random("romTables", iteration);
+            byte[] image = mutatedRom(rnd);
+            long before = Fuzz.allocated();
+            RomReader rom = new RomReader(image);
+            int size = rom.size();
+
+            List<SequenceEntry> seqs = rnd.nextInt(8) == 0 ? rom.parseSequences()
+                    : rom.parseSequences(RomReader.MUSIC_START, size);   // skip the full-ROM discovery most of the time
+            for (SequenceEntry se : seqs) {
+                assertTrue(se.seqOffset >= 0 && se.length > 0 && (long) se.seqOffset + se.length <= size,
+                        "sequence outside the ROM: " + se.seqOffset + "+" + se.length);
+            }
+            for (SoundBankEntry.Kind kind : SoundBankEntry.Kind.values()) {
+                for (SoundBankEntry be : rom.parseSoundBanks(kind)) {
+                    assertTrue(be.offset >= 0 && be.length > 0 && (long) be.offset + be.length <= size,
+                            kind + " bank outside the ROM");
+                }
+            }
+            for (BankSetEntry bs : rom.parseBankSets(rnd.nextInt(0x100))) {
+                assertTrue(bs.offset >= 0 && (long) bs.offset + bs.length() <= size, "bank set outside the ROM");
+            }
+            if (!seqs.isEmpty()) rom.getBytes(seqs.get(0).seqOffset, seqs.get(0).length);
+
+            // Bank discovery decodes a swapped image a window at a time, about one image in all;
+            // nothing else scales with the ROM.
+            long used = Fuzz.allocated() - before;
+            assertTrue(used <= 2L * size + (4 << 20), "parsers allocated " + used + " bytes for a " + size + "-byte ROM");
+        });
+    }
+
+    // ---- M64 scripts ----------------------------------------------------------------------
+
+    /** Opcodes that start scripts or move the program counter, with a u16 target after them. */
+    private static final int[] BRANCHES = { 0x90, 0x10, 0xFC, 0xFB, 0xFA, 0xF9, 0xF5 };
+
+    /**
+     * Random bytes with startchannel/setlayer/jump/call instructions planted in them, so the walk
+     * reaches all three script kinds; targets mostly land inside the sequence. Half the scripts
+     * are tiny, so instructions cut off by the end of the sequence come up often.
+     */
+    private static byte[] m64Script(Random rnd) {
+        byte[] b = new byte[1 + rnd.nextInt(rnd.nextBoolean() ? 32 : 4096)];
+        rnd.nextBytes(b);
+        for (int i = rnd.nextInt(64); i > 0; i--) {
+            int pos = rnd.nextInt(b.length);
+            if (pos + 3 > b.length) continue;
+            int op = BRANCHES[rnd.nextInt(BRANCHES.length)];
+            if (op < 0xF0) op |= rnd.nextInt(rnd.nextBoolean() ? 4 : 16);
+            int target = rnd.nextInt(8) == 0 ? rnd.nextInt(0x10000) : rnd.nextInt(b.length);
+            b[pos] = (byte) op;
+            b[pos + 1] = (byte) (target >> 8);
+            b[pos + 2] = (byte) target;
+        }
+        if (rnd.nextBoolean()) b[0] = (byte) (0x90 | rnd.nextInt(16));   // start a channel right away
+        return b;
+    }
+
+    /** Counts events and checks every decoded instruction lies inside the sequence. */
+    private static final class M64Check implements M64Visitor {
+        final int size;
+        long commands, events, hash;
+
+        M64Check(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public void command(Script script, int channel, int layer, int offset, int opcode, int length) {
+            assertTrue(offset >= 0 && length > 0 && offset + length <= size,
+                    script + " command at " + offset + "+" + length + " of " + size);
+            commands++;
+            hash = hash * 31 + (script.ordinal() << 24 ^ offset << 8 ^ opcode);
+        }
+
+        @Override
+        public void channel(int channel, int offset) {
+            assertTrue(channel >= 0 && channel < 16, "channel " + channel);
+            events++;
+        }
+
+        @Override
+        public void layer(int channel, int layer, int offset) {
+            assertTrue(layer >= 0 && layer < 4, "layer " + layer);
+            events++;
+        }
+
+        @Override
+        public void note(int channel, int layer, int offset, int length, int pitch, int velocity, int duration) {
+            assertTrue(offset >= 0 && offset + length <= size, "note at " + offset + "+" + length + " of " + size);
+            events++;
+        }
+
+        @Override
+        public void error(Script script, int offset, String message) {
+            events++;
+        }
+    }
+
+    /**
+     * The M64 walk never throws, decodes each offset at most once per script kind, keeps every
+     * instruction inside the sequence, allocates in proportion to the sequence and is
+     * deterministic.
+     */
+    @ParameterizedTest
+    @MethodSource(ITERATIONS)
+    void m64Scripts(int iteration) {
+        Fuzz.run("m64Scripts", iteration, () -> {
+            Random rnd = Fuzz.random("m64Scripts", iteration);
+            byte[] script = m64Script(rnd);
+            int from = rnd.nextInt(4) == 0 ? rnd.nextInt(script.length) : 0;   // a slice, as parse(rom, se) passes
+            ByteBuffer seq = ByteBuffer.wrap(script, from, script.length - from);
+            int size = seq.remaining();
+
+            M64Check first = new M64Check(size);
+            M64Parser.parse(seq, first);
+            assertTrue(first.commands <= 3L * size, first.commands + " commands in " + size + " bytes");
+
+            // Allocation is taken on the second walk, so class loading on the first one is not counted.
+            M64Check second = new M64Check(size);
+            long before = Fuzz.allocated();
+            M64Parser.parse(seq, second);
+            long used = Fuzz.allocated() - before;
+            assertTrue(used <= 256L * size + Fuzz.SMALL_BUDGET, "parser allocated " + used + " bytes for " + size);
+            assertEquals(first.hash, second.hash, "second walk decoded differently");
+            assertEquals(first.events, second.events, "second walk reported differently");
+        });
+    }
+}
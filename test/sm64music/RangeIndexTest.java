@@ -0,0 +1,90 @@
+package sm64music;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link RangeIndex} interval queries against a brute-force scan. */
+class RangeIndexTest {
+    private static final int ROM_SIZE = 1 << 20;
+
+    /** {@code count} random short ranges, plus one spanning nearly the whole ROM if asked. */
+    private static RangeIndex index(int count, boolean withLongRange, long seed) {
+        Random rnd = new Random(seed);
+        RomReader rom = new RomReader(new byte[ROM_SIZE]);
+        List<SequenceEntry> seqs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int len = 1 + rnd.nextInt(rnd.nextInt(8) == 0 ? 0x4000 : 0x100);
+            seqs.add(new SequenceEntry(i, 0, rnd.nextInt(ROM_SIZE - len), len));
+        }
+        List<SoundBankEntry> banks = withLongRange
+                ? List.of(new SoundBankEntry(SoundBankEntry.Kind.TBL, 0, 0, 0x10, ROM_SIZE - 0x20))
+                : List.of();
+        RangeIndex.Builder b = new RangeIndex.Builder();
+        b.addRom("test", rom, seqs, banks, new int[0]);
+        return b.build();
+    }
+
+    private static int[] bruteForce(RangeIndex index, int from, int to) {
+        return IntStream.range(0, index.size())
+                .filter(r -> index.offset(r) < to && index.end(r) > from)
+                .toArray();
+    }
+
+    private static void assertMatchesBruteForce(RangeIndex index, long seed) {
+        Random rnd = new Random(seed);
+        for (int q = 0; q < 2000; q++) {
+            int from = rnd.nextInt(ROM_SIZE + 0x100) - 0x80;
+            int to = from + 1 + rnd.nextInt(rnd.nextBoolean() ? 4 : 0x8000);
+            assertArrayEquals(bruteForce(index, from, to), index.overlapping(from, to),
+                    "overlapping(" + from + ", " + to + ")");
+        }
+        for (int x : new int[] { 0, 0xF, 0x10, ROM_SIZE / 2, ROM_SIZE - 0x11, ROM_SIZE - 0x10, ROM_SIZE }) {
+            assertArrayEquals(bruteForce(index, x, x + 1), index.containing(x), "containing(" + x + ")");
+        }
+    }
+
+    @Test
+    void overlappingMatchesBruteForce() {
+        assertMatchesBruteForce(index(5000, false, 1), 2);
+    }
+
+    @Test
+    void oneLongRangeDoesNotChangeTheAnswers() {
+        RangeIndex index = index(5000, true, 3);
+        assertMatchesBruteForce(index, 4);
+        // Away from other ranges only the long one is hit.
+        int[] rows = index.containing(ROM_SIZE - 0x11);
+        assertEquals(RangeIndex.Kind.TBL, index.kind(rows[rows.length - 1]));
+    }
+
+    @Test
+    void everySizeBuildsAConsistentTree() {
+        // Sizes just below, at and above powers of two exercise the partial right edge of the tree.
+        for (int n = 0; n <= 70; n++) {
+            assertMatchesBruteForce(index(n, n % 2 == 1, n), n);
+        }
+    }
+
+    @Test
+    void loadedIndexAnswersTheSame(@TempDir Path dir) throws IOException {
+        RangeIndex built = index(3000, true, 5);
+        Path file = dir.resolve("ranges.idx");
+        built.write(file);
+        RangeIndex loaded = RangeIndex.load(file);
+        assertEquals(built.size(), loaded.size());
+        assertMatchesBruteForce(loaded, 6);
+        assertArrayEquals(built.overlapping(0x1000, 0x9000), loaded.overlapping(0x1000, 0x9000));
+        assertEquals(Arrays.toString(built.containing(0x12345)), Arrays.toString(loaded.containing(0x12345)));
+    }
+}
@@ -0,0 +1,67 @@
+package sm64music;
+
+import org.junit.jupiter.api.Test;
+import sm64fixtures.Fuzz;
+import sm64fixtures.TestRoms;
+import sm64metrics.Metrics;
+import sm64mio.MIO0Decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RomReaderTest {
+    private static final int ENTRY0 = RomReader.MUSIC_START + 4;
+
+    @Test
+    void parsesTheVanillaBank() {
+        List<SequenceEntry> seqs = new RomReader(TestRoms.z64()).parseSequences();
+        assertEquals(TestRoms.SEQUENCES, seqs.size());
+        for (SequenceEntry se : seqs) assertTrue(se.seqOffset + se.length <= RomReader.MUSIC_END);
+    }
+
+    @Test
+    void rejectsEntriesBetweenTheMusicRegionAndTheAppendArea() {
+        byte[] image = TestRoms.z64();
+        ByteBuffer.wrap(image).putInt(ENTRY0, RomReader.BANK_SETS_START - RomReader.MUSIC_START);
+        List<SequenceEntry> seqs = new RomReader(image).parseSequences();
+        assertEquals(TestRoms.SEQUENCES - 1, seqs.size());
+        assertTrue(seqs.stream().noneMatch(se -> se.id == 0));
+    }
+
+    @Test
+    void acceptsSequencesAppendedPastTheRetailImage() {
+        byte[] image = Arrays.copyOf(TestRoms.z64(), RomReader.APPEND_START + 0x1000);
+        ByteBuffer.wrap(image).putInt(ENTRY0, RomReader.APPEND_START - RomReader.MUSIC_START);
+        SequenceEntry se = new RomReader(image).parseSequences().get(0);
+        assertEquals(0, se.id);
+        assertEquals(RomReader.APPEND_START, se.seqOffset);
+    }
+
+    @Test
+    void swappedImagesScanLikeTheZ64WithoutAWholeCopy() throws IOException {
+        RomReader z64 = new RomReader(TestRoms.z64());
+        ByteBuffer image = z64.slice(0, z64.size());
+        int[] blocks = RomIndexCache.scanMio0(z64, Metrics.NONE);
+        assertEquals(TestRoms.MIO0_BLOCKS, blocks.length);
+        String banks = z64.discoverBanks().toString();
+
+        for (byte[] stored : List.of(TestRoms.n64(TestRoms.z64()), TestRoms.v64(TestRoms.z64()))) {
+            RomReader rom = new RomReader(stored);
+            assertEquals(banks, rom.discoverBanks().toString(), rom.format() + " banks");
+            long before = Fuzz.allocated();
+            int[] found = RomIndexCache.scanMio0(rom, Metrics.NONE);
+            long used = Fuzz.allocated() - before;
+            assertArrayEquals(blocks, found, rom.format() + " MIO0 blocks");
+            assertTrue(used < rom.size() / 4, rom.format() + " scan allocated " + used + " bytes");
+            for (int off : blocks) {
+                assertEquals(MIO0Decoder.compressedSize(image, off), RomIndexCache.mio0Size(rom, off));
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package sm64music;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sm64fixtures.TestRoms;
+import sm64metrics.Metrics;
+import sm64mio.MIO0Scanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SequencePatcherTest {
+    @TempDir
+    Path dir;
+
+    private Path romFile() throws IOException {
+        Path p = dir.resolve("rom.z64");
+        Files.write(p, TestRoms.z64());
+        return p;
+    }
+
+    /** Replace {@code id} in the ROM at {@code file} in place; returns the edits made. */
+    private static List<SequencePatch.Edit> patch(Path file, int id, byte[] data) throws IOException {
+        RomReader rom = new RomReader(file.toFile());
+        SequencePatch p = new SequencePatcher(rom, rom.parseSequences()).replace(id, data).build();
+        p.applyTo(file);
+        return p.edits();
+    }
+
+    private static SequenceEntry sequence(Path file, int id) throws IOException {
+        for (SequenceEntry se : new RomReader(file.toFile()).parseSequences()) if (se.id == id) return se;
+        throw new AssertionError("sequence " + id + " missing");
+    }
+
+    private static void assertOutsideBankSets(List<SequencePatch.Edit> edits) {
+        for (SequencePatch.Edit e : edits) {
+            assertTrue(e.offset + e.length() <= RomReader.MUSIC_END || e.offset >= RomReader.APPEND_START,
+                    "edit at 0x" + Integer.toHexString(e.offset) + " overlaps the data after the music region");
+        }
+    }
+
+    @Test
+    void successivePatchesNeverWriteBetweenTheBankAndAppendedSequences() throws IOException {
+        Path file = romFile();
+        byte[] seq0 = TestRoms.bytes(sequence(file, 0).length + 0x400, 1);
+        byte[] seq1 = TestRoms.bytes(0x20000, 2);
+
+        List<SequencePatch.Edit> first = patch(file, 0, seq0);
+        assertOutsideBankSets(first);
+        assertTrue(sequence(file, 0).seqOffset >= RomReader.APPEND_START, "grown sequence is appended");
+
+        List<SequencePatch.Edit> second = patch(file, 1, seq1);
+        assertOutsideBankSets(second);
+
+        byte[] image = Files.readAllBytes(file);
+        for (int i = RomReader.MUSIC_END; i < RomReader.APPEND_START; i++) {
+            assertEquals(TestRoms.AFTER_MUSIC, image[i], "byte at 0x" + Integer.toHexString(i));
+        }
+        RomReader rom = new RomReader(file.toFile());
+        assertEquals(TestRoms.SEQUENCES, rom.parseSequences().size());
+        SequenceEntry s0 = sequence(file, 0), s1 = sequence(file, 1);
+        assertArrayEquals(seq0, rom.getBytes(s0.seqOffset, s0.length));
+        assertArrayEquals(seq1, rom.getBytes(s1.seqOffset, s1.length));
+    }
+
+    @Test
+    void spaceFreedByAnEarlierPatchIsReusedInsideTheBank() throws IOException {
+        Path file = romFile();
+        SequenceEntry big = sequence(file, 0);
+        for (SequenceEntry se : new RomReader(file.toFile()).parseSequences()) if (se.length > big.length) big = se;
+        patch(file, big.id, TestRoms.bytes(big.length + 0x400, 1));
+
+        // A sequence whose 16-byte slot is smaller than the moved one's old bytes outgrows its
+        // slot, but fits where that one used to be.
+        int id = 0;
+        while (id == big.id || ((sequence(file, id).length + 15) & ~15) >= big.length) id++;
+        byte[] data = TestRoms.bytes(big.length, 5);
+        List<SequencePatch.Edit> edits = patch(file, id, data);
+        assertOutsideBankSets(edits);
+        SequenceEntry moved = sequence(file, id);
+        assertEquals(big.seqOffset, moved.seqOffset);
+        assertArrayEquals(data, new RomReader(file.toFile()).getBytes(moved.seqOffset, moved.length));
+    }
+
+    @Test
+    void aChangedAppendedSequenceMayReuseItsOwnBytes() throws IOException {
+        Path file = romFile();
+        patch(file, 0, TestRoms.bytes(sequence(file, 0).length + 0x400, 1));
+        SequenceEntry appended = sequence(file, 0);
+        long size = Files.size(file);
+
+        patch(file, 0, TestRoms.bytes(appended.length - 8, 3));
+        assertEquals(appended.seqOffset, sequence(file, 0).seqOffset);
+        assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    void aRomGrownPastEightMegabytesStillScansItsMio0Blocks() throws IOException {
+        Path file = romFile();
+        patch(file, 0, TestRoms.bytes(sequence(file, 0).length + 0x400, 1));
+        assertTrue(Files.size(file) > MIO0Scanner.RETAIL_SIZE, "grown sequence is appended past 8 MB");
+
+        int[] blocks = RomIndexCache.scanMio0(new RomReader(file.toFile()), Metrics.NONE);
+        assertEquals(TestRoms.MIO0_BLOCKS, blocks.length);
+        assertEquals(TestRoms.MIO0_START, blocks[0]);
+    }
+}